@@ -0,0 +1,88 @@
+package com.herodigital.wcm.internal.rest.registry;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.herodigital.wcm.internal.rest.registry.RestFunctionRegistry.ResolvedFunction;
+
+/**
+ * Lookup cost of the {@link RestFunctionRegistry} implementations for hits, misses, 
+ * deep wildcard paths and paths that force backtracking.
+ * <p>
+ * Run with {@code -prof gc} to see allocation per lookup.
+ * 
+ * @author joel.epps
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RestFunctionRegistryBenchmark {
+	
+	@Param({"trie", "compiled", "cached", "list"})
+	private String impl;
+	
+	@Param({"100", "1000", "10000"})
+	private int routes;
+	
+	private RestFunctionRegistry<String> registry;
+	
+	private HttpMethod[] methods;
+	private String[] paths;
+	private int next;
+	
+	@Setup
+	public void setup() {
+		List<RestOperation> ops = RouteTables.withSpecialRoutes(RouteTables.generateLoadSet(routes));
+		registry = RouteTables.createRegistry(impl, ops);
+		
+		List<RestOperation> pulls = RouteTables.generatePullSet(RouteTables.generateLoadSet(routes));
+		methods = new HttpMethod[pulls.size()];
+		paths = new String[pulls.size()];
+		for (int i = 0; i < pulls.size(); i++) {
+			methods[i] = pulls.get(i).getMethod();
+			paths[i] = pulls.get(i).getPath();
+		}
+	}
+	
+	@Benchmark
+	public ResolvedFunction<String> hit() {
+		int i = next + 1;
+		if (i == paths.length) {
+			i = 0;
+		}
+		next = i;
+		return registry.getFunction(methods[i], paths[i]);
+	}
+	
+	@Benchmark
+	public ResolvedFunction<String> miss() {
+		return registry.getFunction(HttpMethod.GET, RouteTables.MISS_PATH);
+	}
+	
+	@Benchmark
+	public ResolvedFunction<String> deepWildcard() {
+		return registry.getFunction(HttpMethod.GET, RouteTables.DEEP_WILDCARD_PATH);
+	}
+	
+	@Benchmark
+	public ResolvedFunction<String> backtrack() {
+		return registry.getFunction(HttpMethod.GET, RouteTables.BACKTRACK_PATH);
+	}
+
+}
@@ -0,0 +1,51 @@
+package com.herodigital.wcm.internal.rest.registry;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of building a {@link RestFunctionRegistry}, which happens whenever a {@code SlingRestService} 
+ * is added or removed.
+ * 
+ * @author joel.epps
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RestFunctionRegistryLoadBenchmark {
+	
+	@Param({"trie", "compiled", "list"})
+	private String impl;
+	
+	@Param({"100", "1000", "10000"})
+	private int routes;
+	
+	private List<RestOperation> ops;
+	
+	@Setup
+	public void setup() {
+		ops = RouteTables.generateLoadSet(routes);
+	}
+	
+	@Benchmark
+	public RestFunctionRegistry<String> load() {
+		return RouteTables.createRegistry(impl, ops);
+	}
+
+}
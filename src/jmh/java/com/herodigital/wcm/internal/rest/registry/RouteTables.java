@@ -0,0 +1,121 @@
+package com.herodigital.wcm.internal.rest.registry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deterministic route tables and lookup sets shared by the benchmarks.
+ * 
+ * @author joel.epps
+ *
+ */
+public final class RouteTables {
+	
+	/** Registered by {@link #withSpecialRoutes(List)}. Matches {@link #DEEP_WILDCARD_PATH} capturing 8 wildcards. */
+	public static final String DEEP_WILDCARD_ROUTE = "/deep/{a}/{b}/{c}/{d}/{e}/{f}/{g}/{h}";
+	public static final String DEEP_WILDCARD_PATH = "/deep/1/2/3/4/5/6/7/8";
+	
+	/** 
+	 * Registered by {@link #withSpecialRoutes(List)}. Every level of {@link #BACKTRACK_PATH} first matches 
+	 * a literal branch which dead ends, so the lookup has to backtrack into the wildcard branch at every level.
+	 */
+	public static final String BACKTRACK_ROUTE = "/bt/{a}/{b}/{c}/{d}/{e}/target";
+	public static final String BACKTRACK_PATH = "/bt/x/x/x/x/x/target";
+	
+	public static final String MISS_PATH = "/rpc/something/category/milli/pontiac_notfound/id";
+
+	private RouteTables() {
+	}
+
+	/**
+	 * Generates {@code size} routes. The same {@code size} always produces the same routes.
+	 * 
+	 * @param size number of routes
+	 * @return routes
+	 */
+	public static List<RestOperation> generateLoadSet(int size) {
+		String[] subA = new String[]{"user", "place", "color", "category"};
+		String[] subB = new String[]{"day", "month", "year", "hour", "minute", "second", "milli"};
+		String[] subC = new String[]{"honda", "audi", "gm", "ford", "pontiac", "toyota", "kia", "saturn", "jaguar", "porsche", "fiat", "mazda", "chrysler", "subaru"};
+		HttpMethod[] methods = new HttpMethod[]{HttpMethod.GET, HttpMethod.POST, HttpMethod.PUT, HttpMethod.DELETE};
+		
+		List<RestOperation> ops = new ArrayList<RestOperation>(size);
+		for (int base = 0; ops.size() < size; base++) {
+			String start = "/api" + base + "/{wildcard}";
+			for (String a : subA) {
+				for (String b : subB) {
+					for (String c : subC) {
+						String startABC = start + "/" + a + "/" + b + "/" + c;
+						for (HttpMethod method : methods) {
+							ops.add(new RestOperation(method, startABC));
+							ops.add(new RestOperation(method, startABC + "/{id}"));
+							ops.add(new RestOperation(method, startABC.replace("/{wildcard}", "")));
+						}
+					}
+				}
+			}
+		}
+		return new ArrayList<RestOperation>(ops.subList(0, size));
+	}
+	
+	/**
+	 * Adds the routes used for the deep wildcard and backtracking lookups.
+	 * 
+	 * @param ops routes
+	 * @return new list with {@code ops} and the special routes
+	 */
+	public static List<RestOperation> withSpecialRoutes(List<RestOperation> ops) {
+		List<RestOperation> result = new ArrayList<RestOperation>(ops);
+		result.add(new RestOperation(HttpMethod.GET, DEEP_WILDCARD_ROUTE));
+		result.add(new RestOperation(HttpMethod.GET, BACKTRACK_ROUTE));
+		// literal dead ends at every level of BACKTRACK_PATH
+		String literal = "/bt";
+		for (int i = 0; i < 5; i++) {
+			literal += "/x";
+			result.add(new RestOperation(HttpMethod.GET, literal + "/deadend"));
+		}
+		return result;
+	}
+	
+	/**
+	 * Turns every route into a concrete request path by filling in the wildcards.
+	 * 
+	 * @param ops routes
+	 * @return operations with concrete paths
+	 */
+	public static List<RestOperation> generatePullSet(List<RestOperation> ops) {
+		List<RestOperation> result = new ArrayList<RestOperation>(ops.size());
+		for (RestOperation o : ops) {
+			String path = o.getPath();
+			path = path.replace("{wildcard}", "VALUE1");
+			path = path.replace("{id}", "123");
+			result.add(new RestOperation(o.getMethod(), path));
+		}
+		return result;
+	}
+	
+	/**
+	 * @param impl one of {@code trie}, {@code compiled}, {@code cached} or {@code list}
+	 * @param ops routes to register
+	 * @return populated registry
+	 */
+	public static RestFunctionRegistry<String> createRegistry(String impl, List<RestOperation> ops) {
+		RestFunctionRegistry<String> registry;
+		if ("list".equals(impl)) {
+			registry = new RestRunctionRegistryList<>();
+		} else {
+			registry = new RestFunctionRegistryTrie<>();
+		}
+		for (RestOperation op : ops) {
+			registry.addFunction(op, op.getPath());
+		}
+		if ("compiled".equals(impl)) {
+			return ((RestFunctionRegistryTrie<String>) registry).freeze();
+		}
+		if ("cached".equals(impl)) {
+			return new CachingRestFunctionRegistry<>(((RestFunctionRegistryTrie<String>) registry).freeze(), 4096);
+		}
+		return registry;
+	}
+
+}
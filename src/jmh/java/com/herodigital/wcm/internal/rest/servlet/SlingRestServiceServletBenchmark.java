@@ -0,0 +1,135 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.herodigital.wcm.internal.rest.registry.HttpMethod;
+import com.herodigital.wcm.internal.rest.registry.RestFunctionRegistry;
+import com.herodigital.wcm.internal.rest.registry.RestFunctionRegistry.ResolvedFunction;
+import com.herodigital.wcm.internal.rest.registry.RestFunctionRegistryTrie;
+import com.herodigital.wcm.internal.rest.registry.RestOperation;
+import com.herodigital.wcm.internal.rest.registry.RouteTables;
+import com.herodigital.wcm.internal.rest.service.RestFunctionInvoker;
+import com.herodigital.wcm.internal.rest.service.RestFunctionRegistryService;
+import com.herodigital.wcm.internal.rest.service.RestResponse;
+
+/**
+ * Request path normalization and end to end dispatch through {@link SlingRestServiceServlet}: path normalization, 
+ * route lookup, wildcard binding, function invocation, response writing and metrics. The REST function itself
+ * returns a constant response.
+ * <p>
+ * Run with {@code -prof gc} to see allocation per request.
+ * 
+ * @author joelepps
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SlingRestServiceServletBenchmark {
+	
+	private static final String RAW_PATH = "/api0/VALUE1/user/day/honda/123.ws.json";
+	private static final String SLASHES_PATH = "/api0//VALUE1/user//day/honda/123.ws.json";
+	
+	private static final RestResponse RESPONSE = new RestResponse.Builder("{\"result\":true}").create();
+	
+	@Param({"100", "1000", "10000"})
+	private int routes;
+	
+	private SlingRestServiceServlet servlet;
+	private RestPathNormalizer normalizer;
+	
+	private SlingHttpServletRequest request;
+	private SlingHttpServletRequest deepWildcardRequest;
+	private SlingHttpServletRequest missRequest;
+	private SlingHttpServletResponse response;
+	
+	@Setup
+	public void setup() throws Exception {
+		RestFunctionInvoker invoker = new RestFunctionInvoker() {
+			@Override
+			public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+				return RESPONSE;
+			}
+		};
+		
+		RestFunctionRegistryTrie<RestFunctionRegistryService.FunctionMeta> trie = new RestFunctionRegistryTrie<>();
+		for (RestOperation op : RouteTables.withSpecialRoutes(RouteTables.generateLoadSet(routes))) {
+			trie.addFunction(op, new RestFunctionRegistryService.FunctionMeta(null, "benchmark", op, invoker));
+		}
+		final RestFunctionRegistry<RestFunctionRegistryService.FunctionMeta> registry = trie.freeze();
+		
+		normalizer = new RestPathNormalizer(new String[]{SlingRestServiceServlet.SELECTOR}, new String[]{SlingRestServiceServlet.EXTENSION});
+		servlet = new SlingRestServiceServlet();
+		Field registryField = SlingRestServiceServlet.class.getDeclaredField("registryService");
+		registryField.setAccessible(true);
+		registryField.set(servlet, new RestFunctionRegistryService() {
+			@Override
+			public ResolvedFunction<FunctionMeta> getFunction(RestOperation restOperation) {
+				return registry.getFunction(restOperation);
+			}
+			@Override
+			public ResolvedFunction<FunctionMeta> getFunction(HttpMethod method, CharSequence path) {
+				return registry.getFunction(method, path);
+			}
+			@Override
+			public Set<HttpMethod> getAllowedMethods(CharSequence path) {
+				return registry.getAllowedMethods(path);
+			}
+			@Override
+			public long getGeneration() {
+				return 0;
+			}
+		});
+		
+		request = BenchmarkRequests.request("GET", RAW_PATH, Collections.<String, String>emptyMap());
+		deepWildcardRequest = BenchmarkRequests.request("GET", RouteTables.DEEP_WILDCARD_PATH + ".ws.json", Collections.<String, String>emptyMap());
+		missRequest = BenchmarkRequests.request("GET", RouteTables.MISS_PATH + ".ws.json", Collections.<String, String>emptyMap());
+		response = BenchmarkRequests.response();
+	}
+	
+	@Benchmark
+	public CharSequence normalizePath() {
+		return normalizer.normalize(RAW_PATH);
+	}
+	
+	@Benchmark
+	public CharSequence normalizeDuplicateSlashes() {
+		return normalizer.normalize(SLASHES_PATH);
+	}
+	
+	@Benchmark
+	public void dispatch() throws Exception {
+		servlet.doGet(request, response);
+	}
+	
+	@Benchmark
+	public void dispatchDeepWildcard() throws Exception {
+		servlet.doGet(deepWildcardRequest, response);
+	}
+	
+	@Benchmark
+	public void dispatchMiss() throws Exception {
+		servlet.doGet(missRequest, response);
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.herodigital.wcm.internal.rest.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with microsecond resolution.
+ * <p>
+ * Buckets are log-linear: every power of two range is split into 4 buckets, so a percentile is 
+ * reported with at most 25% error while the whole range up to days fits into 160 counters. 
+ * Recording is a bucket computation and one atomic increment. The maximum is tracked exactly.
+ * 
+ * @author joelepps
+ *
+ */
+public final class LatencyHistogram {
+	
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = 40 * SUB_BUCKETS;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong max = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	
+	/**
+	 * @param nanos duration in nanoseconds
+	 */
+	public void record(long nanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(nanos, 0));
+		counts.incrementAndGet(bucket(micros));
+		sum.addAndGet(micros);
+		long currentMax;
+		while (micros > (currentMax = max.get())) {
+			if (max.compareAndSet(currentMax, micros)) {
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * @param percentile between 0 and 100
+	 * @return upper bound of the bucket holding the percentile in microseconds, 0 if nothing was recorded
+	 */
+	public long getPercentileMicros(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= Math.max(rank, 1)) {
+				return Math.min(upperBound(i), getMaxMicros());
+			}
+		}
+		return getMaxMicros();
+	}
+	
+	public long getMaxMicros() {
+		return max.get();
+	}
+	
+	/**
+	 * @return sum of all recorded durations in microseconds
+	 */
+	public long getSumMicros() {
+		return sum.get();
+	}
+	
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		max.set(0);
+		sum.set(0);
+	}
+	
+	static int bucket(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		int index = (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+		return Math.min(index, BUCKETS - 1);
+	}
+	
+	/*
+	 * Largest value that falls into bucket index.
+	 */
+	static long upperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int subBucket = index % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return ((SUB_BUCKETS + subBucket) * width) + width - 1;
+	}
+
+}
@@ -0,0 +1,142 @@
+package com.herodigital.wcm.internal.rest.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency of a single registered route. All methods are lock-free and safe for use by multiple threads.
+ * 
+ * @author joelepps
+ *
+ */
+public class RouteMetrics implements RouteMetricsMBean {
+	
+	/**
+	 * Error category of exceptions other than {@code SlingRestServiceException}.
+	 */
+	public static final String CATEGORY_UNEXPECTED = "unexpected";
+	
+	private final String route;
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong errorCount = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+	private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<>();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	
+	public RouteMetrics(String route) {
+		this.route = route;
+	}
+	
+	/**
+	 * Record a completed request.
+	 * 
+	 * @param nanos duration
+	 * @param bytes bytes written to the client
+	 */
+	public void record(long nanos, long bytes) {
+		count.incrementAndGet();
+		latency.record(nanos);
+		if (bytes > 0) {
+			bytesWritten.addAndGet(bytes);
+		}
+	}
+	
+	/**
+	 * Record a failed request, in addition to {@link #record(long, long)}.
+	 * 
+	 * @param category error category
+	 */
+	public void recordError(String category) {
+		errorCount.incrementAndGet();
+		AtomicLong counter = errors.get(category);
+		if (counter == null) {
+			AtomicLong newCounter = new AtomicLong();
+			counter = errors.putIfAbsent(category, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+	@Override
+	public String getRoute() {
+		return route;
+	}
+
+	@Override
+	public long getCount() {
+		return count.get();
+	}
+
+	@Override
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+	
+	/**
+	 * @return error counts by category, sorted by category
+	 */
+	public Map<String, Long> getErrors() {
+		Map<String, Long> result = new TreeMap<>();
+		for (Map.Entry<String, AtomicLong> entry : errors.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().get());
+		}
+		return result;
+	}
+
+	@Override
+	public String getErrorsByCategory() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Long> entry : getErrors().entrySet()) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(entry.getKey()).append('=').append(entry.getValue());
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		long n = count.get();
+		return (n == 0) ? 0 : toMillis(latency.getSumMicros()) / n;
+	}
+
+	@Override
+	public double getP50Millis() {
+		return toMillis(latency.getPercentileMicros(50));
+	}
+
+	@Override
+	public double getP99Millis() {
+		return toMillis(latency.getPercentileMicros(99));
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return toMillis(latency.getMaxMicros());
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	@Override
+	public void reset() {
+		count.set(0);
+		errorCount.set(0);
+		bytesWritten.set(0);
+		errors.clear();
+		latency.reset();
+	}
+	
+	private static double toMillis(long micros) {
+		return micros / 1000.0;
+	}
+
+}
@@ -0,0 +1,37 @@
+package com.herodigital.wcm.internal.rest.metrics;
+
+/**
+ * JMX view of {@link RouteMetrics}.
+ * 
+ * @author joelepps
+ *
+ */
+public interface RouteMetricsMBean {
+	
+	/**
+	 * @return registered operation, example: GET:/api/user/{id}
+	 */
+	String getRoute();
+	
+	long getCount();
+	
+	long getErrorCount();
+	
+	/**
+	 * @return error counts by {@code SlingRestServiceException} category, example: error=2, validation=10
+	 */
+	String getErrorsByCategory();
+	
+	double getMeanMillis();
+	
+	double getP50Millis();
+	
+	double getP99Millis();
+	
+	double getMaxMillis();
+	
+	long getBytesWritten();
+	
+	void reset();
+
+}
@@ -0,0 +1,467 @@
+package com.herodigital.wcm.internal.rest.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.SimpleAnnotationValueVisitor7;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+
+import com.herodigital.wcm.internal.rest.registry.RestFunctionRegistryTrie;
+import com.herodigital.wcm.internal.rest.registry.RestOperation;
+import com.herodigital.wcm.internal.rest.service.RestFunctionInvoker;
+import com.herodigital.wcm.internal.rest.service.SlingRestBulkhead;
+import com.herodigital.wcm.internal.rest.service.SlingRestFunction;
+import com.herodigital.wcm.internal.rest.service.SlingRestRouteIndex;
+import com.herodigital.wcm.internal.rest.service.SlingRestService;
+
+/**
+ * Annotation processor for {@link SlingRestFunction} methods. Runs when this bundle is on the compile classpath
+ * of a project with {@link SlingRestService} classes.
+ * <p>
+ * Fails the build for functions the registry would reject at runtime: wrong signature, malformed routes, invalid
+ * wildcard types and conflicting routes within a class. Conflicts between classes of the same project are
+ * warnings, since service ranking may resolve them on purpose.
+ * <p>
+ * Generates a {@link SlingRestRouteIndex} for every service class, which lets the registry add the functions
+ * without scanning the class.
+ *
+ * @author joelepps
+ *
+ */
+@SupportedAnnotationTypes("com.herodigital.wcm.internal.rest.service.SlingRestFunction")
+public class SlingRestFunctionProcessor extends AbstractProcessor {
+
+	private static final String INDEX = SlingRestRouteIndex.class.getName();
+	private static final String ROUTE = SlingRestRouteIndex.Route.class.getCanonicalName();
+
+	private Elements elements;
+	private Types types;
+	private Messager messager;
+
+	private TypeMirror serviceType;
+	private TypeMirror requestType;
+	private TypeMirror responseType;
+	private TypeMirror exceptionType;
+	private TypeMirror errorType;
+
+	/*
+	 * Routes of all classes compiled so far, to report conflicts between classes. Values are the
+	 * class and method names.
+	 */
+	private final RestFunctionRegistryTrie<String> allRoutes = new RestFunctionRegistryTrie<>();
+
+	@Override
+	public synchronized void init(ProcessingEnvironment processingEnv) {
+		super.init(processingEnv);
+		elements = processingEnv.getElementUtils();
+		types = processingEnv.getTypeUtils();
+		messager = processingEnv.getMessager();
+		serviceType = typeOf(SlingRestService.class);
+		requestType = typeOf(SlingHttpServletRequest.class);
+		responseType = typeOf(SlingHttpServletResponse.class);
+		exceptionType = typeOf(Exception.class);
+		errorType = typeOf(Error.class);
+	}
+
+	private TypeMirror typeOf(Class<?> clazz) {
+		return types.erasure(elements.getTypeElement(clazz.getCanonicalName()).asType());
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		Set<TypeElement> classes = new LinkedHashSet<>();
+		for (Element element : roundEnv.getElementsAnnotatedWith(SlingRestFunction.class)) {
+			classes.add((TypeElement) element.getEnclosingElement());
+		}
+		for (TypeElement clazz : classes) {
+			processClass(clazz);
+		}
+		return false;
+	}
+
+	private void processClass(TypeElement clazz) {
+		if (clazz.getKind() != ElementKind.CLASS || clazz.getModifiers().contains(Modifier.ABSTRACT)
+				|| !types.isAssignable(types.erasure(clazz.asType()), serviceType)) {
+			messager.printMessage(Kind.WARNING, "Functions are only registered on concrete " + SlingRestService.class.getSimpleName()
+					+ " classes, " + clazz.getQualifiedName() + " is skipped", clazz);
+			return;
+		}
+		if (clazz.getModifiers().contains(Modifier.PRIVATE)) {
+			messager.printMessage(Kind.ERROR, "Classes with REST functions must not be private", clazz);
+			return;
+		}
+
+		Map<RestOperation, String> classRoutes = new LinkedHashMap<>();
+		StringBuilder routes = new StringBuilder();
+		int count = 0;
+		boolean valid = true;
+		for (ExecutableElement method : ElementFilter.methodsIn(clazz.getEnclosedElements())) {
+			AnnotationMirror function = getAnnotation(method, SlingRestFunction.class);
+			if (function == null) {
+				continue;
+			}
+			if (!validateMethod(method) | !validateRoutes(clazz, method, function, classRoutes)) {
+				valid = false;
+				continue;
+			}
+			appendRoute(routes, clazz, method, function);
+			count++;
+		}
+
+		if (valid) {
+			writeIndex(clazz, routes, count);
+		}
+	}
+
+	private boolean validateMethod(ExecutableElement method) {
+		Set<Modifier> modifiers = method.getModifiers();
+		if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC)) {
+			messager.printMessage(Kind.ERROR, "REST functions must be public instance methods", method);
+			return false;
+		}
+		List<? extends VariableElement> parameters = method.getParameters();
+		if (parameters.size() != 2
+				|| !types.isSameType(types.erasure(parameters.get(0).asType()), requestType)
+				|| !types.isSameType(types.erasure(parameters.get(1).asType()), responseType)) {
+			messager.printMessage(Kind.ERROR, "REST functions must have a parameter signature of ("
+					+ SlingHttpServletRequest.class.getSimpleName() + ", " + SlingHttpServletResponse.class.getSimpleName() + ")", method);
+			return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Adds the routes to the registries the same way the runtime registry does, so malformed routes
+	 * and conflicts fail with the same messages. classRoutes holds the valid routes of the class so far
+	 * and the methods they belong to.
+	 */
+	private boolean validateRoutes(TypeElement clazz, ExecutableElement method, AnnotationMirror function, Map<RestOperation, String> classRoutes) {
+		String name = clazz.getQualifiedName() + "." + method.getSimpleName();
+		SlingRestFunction annotation = method.getAnnotation(SlingRestFunction.class);
+		if (annotation.value().length == 0) {
+			messager.printMessage(Kind.ERROR, "REST functions must have at least one route", method, function);
+			return false;
+		}
+		boolean valid = true;
+		for (String route : annotation.value()) {
+			RestOperation operation;
+			try {
+				operation = RestOperation.fromString(route);
+				new RestFunctionRegistryTrie<String>().addFunction(operation, name); // malformed on its own
+			} catch (IllegalArgumentException e) {
+				messager.printMessage(Kind.ERROR, "Invalid route " + route + ": " + e.getMessage(), method, function);
+				valid = false;
+				continue;
+			}
+			Map.Entry<RestOperation, String> conflict = findConflict(classRoutes, operation);
+			if (conflict != null) {
+				messager.printMessage(Kind.ERROR, "Route " + route + " of " + method.getSimpleName() + " conflicts with route " 
+						+ conflict.getKey() + " of " + conflict.getValue(), method, function);
+				valid = false;
+				continue;
+			}
+			classRoutes.put(operation, method.getSimpleName().toString());
+			try {
+				allRoutes.addFunction(operation, name);
+			} catch (IllegalArgumentException e) {
+				messager.printMessage(Kind.WARNING, "Route " + route + " conflicts with another class: " + e.getMessage(), method, function);
+			}
+		}
+		return valid;
+	}
+	
+	/*
+	 * Route of the class that can not be registered together with operation, or null.
+	 */
+	private static Map.Entry<RestOperation, String> findConflict(Map<RestOperation, String> classRoutes, RestOperation operation) {
+		for (Map.Entry<RestOperation, String> route : classRoutes.entrySet()) {
+			RestFunctionRegistryTrie<String> registry = new RestFunctionRegistryTrie<>();
+			registry.addFunction(route.getKey(), route.getValue());
+			try {
+				registry.addFunction(operation, route.getValue());
+			} catch (IllegalArgumentException e) {
+				return route;
+			}
+		}
+		return null;
+	}
+
+	private AnnotationMirror getAnnotation(Element element, Class<?> annotationType) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationType.getName())) {
+				return mirror;
+			}
+		}
+		return null;
+	}
+
+	private void appendRoute(StringBuilder out, TypeElement clazz, ExecutableElement method, AnnotationMirror function) {
+		String name = method.getSimpleName().toString();
+		boolean isVoid = method.getReturnType().getKind() == TypeKind.VOID;
+		String call = "target." + name + "(request, response)";
+
+		out.append("\t\troutes.add(new ").append(ROUTE).append("(").append(literal(name)).append(", new ")
+				.append(RestFunctionInvoker.class.getName()).append("() {\n");
+		out.append("\t\t\t@Override\n");
+		out.append("\t\t\tpublic Object invoke(").append(SlingHttpServletRequest.class.getName()).append(" request, ")
+				.append(SlingHttpServletResponse.class.getName()).append(" response) throws Exception {\n");
+		String indent = "\t\t\t\t";
+		boolean wrapThrowable = throwsThrowable(method);
+		if (wrapThrowable) {
+			out.append(indent).append("try {\n");
+			indent += "\t";
+		}
+		if (isVoid) {
+			out.append(indent).append(call).append(";\n");
+			out.append(indent).append("return null;\n");
+		} else {
+			out.append(indent).append("return ").append(call).append(";\n");
+		}
+		if (wrapThrowable) {
+			out.append("\t\t\t\t} catch (Exception | Error e) {\n");
+			out.append("\t\t\t\t\tthrow e;\n");
+			out.append("\t\t\t\t} catch (Throwable t) {\n");
+			out.append("\t\t\t\t\tthrow new IllegalStateException(\"Unexpected throwable from \" + this, t);\n");
+			out.append("\t\t\t\t}\n");
+		}
+		out.append("\t\t\t}\n");
+		out.append("\t\t\t@Override\n");
+		out.append("\t\t\tpublic String toString() {\n");
+		out.append("\t\t\t\treturn ").append(literal(clazz.getQualifiedName() + "." + name)).append(";\n");
+		out.append("\t\t\t}\n");
+		out.append("\t\t}, ").append(typeExpression(method.getReturnType())).append(",\n");
+		out.append("\t\t\t\t").append(annotationExpression(function)).append(",\n");
+		AnnotationMirror bulkhead = getAnnotation(method, SlingRestBulkhead.class);
+		out.append("\t\t\t\t").append((bulkhead == null) ? "null" : annotationExpression(bulkhead)).append("));\n");
+	}
+
+	/*
+	 * Custom Throwable subclasses can not be rethrown by RestFunctionInvoker.invoke.
+	 */
+	private boolean throwsThrowable(ExecutableElement method) {
+		for (TypeMirror thrown : method.getThrownTypes()) {
+			if (!types.isAssignable(thrown, exceptionType) && !types.isAssignable(thrown, errorType)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void writeIndex(TypeElement clazz, CharSequence routes, int count) {
+		String packageName = elements.getPackageOf(clazz).getQualifiedName().toString();
+		String binaryName = elements.getBinaryName(clazz).toString();
+		String indexName = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1) + SlingRestRouteIndex.CLASS_SUFFIX;
+		String className = clazz.getQualifiedName().toString();
+		AnnotationMirror bulkhead = getAnnotation(clazz, SlingRestBulkhead.class);
+
+		StringBuilder out = new StringBuilder();
+		if (!packageName.isEmpty()) {
+			out.append("package ").append(packageName).append(";\n\n");
+		}
+		out.append("/**\n");
+		out.append(" * Route index of {@link ").append(className).append("}. Generated by ").append(getClass().getName()).append(", do not edit.\n");
+		out.append(" */\n");
+		out.append("@SuppressWarnings(\"all\")\n");
+		out.append("public final class ").append(indexName).append(" implements ").append(INDEX).append(" {\n\n");
+		out.append("\t@Override\n");
+		out.append("\tpublic ").append(SlingRestBulkhead.class.getName()).append(" getBulkhead() {\n");
+		out.append("\t\treturn ").append((bulkhead == null) ? "null" : annotationExpression(bulkhead)).append(";\n");
+		out.append("\t}\n\n");
+		out.append("\t@Override\n");
+		out.append("\tpublic java.util.List<").append(ROUTE).append("> getRoutes(").append(SlingRestService.class.getName()).append(" service) {\n");
+		out.append("\t\tfinal ").append(className).append(" target = (").append(className).append(") service;\n");
+		out.append("\t\tjava.util.List<").append(ROUTE).append("> routes = new java.util.ArrayList<").append(ROUTE).append(">(").append(count).append(");\n");
+		out.append(routes);
+		out.append("\t\treturn routes;\n");
+		out.append("\t}\n\n");
+		out.append("}\n");
+
+		try (Writer writer = processingEnv.getFiler().createSourceFile(packageName.isEmpty() ? indexName : packageName + "." + indexName, clazz).openWriter()) {
+			writer.write(out.toString());
+		} catch (IOException e) {
+			messager.printMessage(Kind.ERROR, "Failed to write route index " + indexName + ": " + e, clazz);
+		}
+	}
+
+	/*
+	 * Source expression of the runtime Type of a return type. Type variables are left to the runtime class
+	 * of the returned object.
+	 */
+	private String typeExpression(TypeMirror type) {
+		switch (type.getKind()) {
+		case DECLARED:
+			DeclaredType declared = (DeclaredType) type;
+			String raw = ((TypeElement) declared.asElement()).getQualifiedName() + ".class";
+			if (declared.getTypeArguments().isEmpty()) {
+				return raw;
+			}
+			StringBuilder sb = new StringBuilder(ROUTE).append(".parameterized(").append(raw);
+			for (TypeMirror argument : declared.getTypeArguments()) {
+				sb.append(", ").append(typeExpression(argument));
+			}
+			return sb.append(')').toString();
+		case WILDCARD:
+			TypeMirror bound = ((WildcardType) type).getExtendsBound();
+			return (bound == null) ? "Object.class" : typeExpression(bound);
+		case ARRAY:
+			return types.erasure(type) + ".class";
+		case VOID:
+			return "void.class";
+		default:
+			return type.getKind().isPrimitive() ? type + ".class" : "Object.class";
+		}
+	}
+
+	/*
+	 * Anonymous implementation of the annotation with all values, including defaults, as literals.
+	 */
+	private String annotationExpression(AnnotationMirror mirror) {
+		String annotationType = ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+		StringBuilder sb = new StringBuilder("new ").append(annotationType).append("() {");
+		sb.append(" public Class<? extends java.lang.annotation.Annotation> annotationType() { return ").append(annotationType).append(".class; }");
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : elements.getElementValuesWithDefaults(mirror).entrySet()) {
+			TypeMirror returnType = entry.getKey().getReturnType();
+			sb.append(" public ").append(types.erasure(returnType)).append(' ').append(entry.getKey().getSimpleName())
+					.append("() { return ").append(entry.getValue().accept(valueLiteral, returnType)).append("; }");
+		}
+		return sb.append(" }").toString();
+	}
+
+	private final SimpleAnnotationValueVisitor7<String, TypeMirror> valueLiteral = new SimpleAnnotationValueVisitor7<String, TypeMirror>() {
+
+		@Override
+		public String visitBoolean(boolean b, TypeMirror type) {
+			return String.valueOf(b);
+		}
+
+		@Override
+		public String visitByte(byte b, TypeMirror type) {
+			return "(byte) " + b;
+		}
+
+		@Override
+		public String visitChar(char c, TypeMirror type) {
+			return "'" + escape(String.valueOf(c), '\'') + "'";
+		}
+
+		@Override
+		public String visitShort(short s, TypeMirror type) {
+			return "(short) " + s;
+		}
+
+		@Override
+		public String visitInt(int i, TypeMirror type) {
+			return String.valueOf(i);
+		}
+
+		@Override
+		public String visitLong(long i, TypeMirror type) {
+			return i + "L";
+		}
+
+		@Override
+		public String visitFloat(float f, TypeMirror type) {
+			return Float.isNaN(f) ? "Float.NaN" : Float.isInfinite(f) ? (f > 0 ? "Float.POSITIVE_INFINITY" : "Float.NEGATIVE_INFINITY") : f + "f";
+		}
+
+		@Override
+		public String visitDouble(double d, TypeMirror type) {
+			return Double.isNaN(d) ? "Double.NaN" : Double.isInfinite(d) ? (d > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY") : d + "d";
+		}
+
+		@Override
+		public String visitString(String s, TypeMirror type) {
+			return literal(s);
+		}
+
+		@Override
+		public String visitType(TypeMirror t, TypeMirror type) {
+			return types.erasure(t) + ".class";
+		}
+
+		@Override
+		public String visitEnumConstant(VariableElement c, TypeMirror type) {
+			return ((TypeElement) c.getEnclosingElement()).getQualifiedName() + "." + c.getSimpleName();
+		}
+
+		@Override
+		public String visitAnnotation(AnnotationMirror a, TypeMirror type) {
+			return annotationExpression(a);
+		}
+
+		@Override
+		public String visitArray(List<? extends AnnotationValue> values, TypeMirror type) {
+			TypeMirror componentType = ((ArrayType) type).getComponentType();
+			StringBuilder sb = new StringBuilder("new ").append(types.erasure(componentType)).append("[] {");
+			for (int i = 0; i < values.size(); i++) {
+				sb.append((i == 0) ? "" : ", ").append(values.get(i).accept(this, componentType));
+			}
+			return sb.append('}').toString();
+		}
+
+	};
+
+	private static String literal(String s) {
+		return "\"" + escape(s, '"') + "\"";
+	}
+
+	private static String escape(String s, char quote) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\t': sb.append("\\t"); break;
+			case '\b': sb.append("\\b"); break;
+			case '\f': sb.append("\\f"); break;
+			default:
+				if (c == quote) {
+					sb.append('\\').append(c);
+				} else if (c < 0x20 || c > 0x7e) {
+					sb.append(String.format("\\u%04x", (int) c));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+}
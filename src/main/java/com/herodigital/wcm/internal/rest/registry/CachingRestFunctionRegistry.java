@@ -0,0 +1,185 @@
+package com.herodigital.wcm.internal.rest.registry;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable RestFunctionRegistry that remembers the {@link ResolvedFunction} of each exact path, so a repeated
+ * lookup is a single hash probe instead of a walk of the wrapped registry. Paths without a function are not
+ * remembered, so unknown paths can not push out the known ones.
+ * <p>
+ * The number of remembered paths is bounded. When a new path exceeds the bound, a few remembered paths are
+ * sampled and the least frequently used one is removed. Sampled paths have their use count halved, so paths
+ * that stopped being requested eventually make room. Lookups never lock, only one thread evicts at a time.
+ * <p>
+ * The wrapped registry must not change. A rebuilt registry gets a new instance, which also drops all
+ * remembered paths. Instances are safe for use by multiple threads. {@link #addFunction(RestOperation, Object)}
+ * and {@link #clear()} throw {@link UnsupportedOperationException}.
+ *
+ * @author joel.epps
+ *
+ * @param <T> Function class/type
+ */
+public class CachingRestFunctionRegistry<T> implements RestFunctionRegistry<T> {
+
+	private static final int EVICTION_SAMPLE_SIZE = 8;
+	private static final int MAX_FREQUENCY = 15;
+
+	private final RestFunctionRegistry<T> registry;
+	private final int maxEntries;
+	private final ConcurrentHashMap<Key, Entry<T>> entries;
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicBoolean evicting = new AtomicBoolean();
+
+	/*
+	 * Position of the eviction sampling, continued by every eviction so all entries get sampled.
+	 * Only used by the thread that set evicting.
+	 */
+	private Iterator<Map.Entry<Key, Entry<T>>> hand;
+
+	/**
+	 * @param registry Registry to cache, must not change anymore
+	 * @param maxEntries maximum number of remembered paths
+	 */
+	public CachingRestFunctionRegistry(RestFunctionRegistry<T> registry, int maxEntries) {
+		this.registry = registry;
+		this.maxEntries = maxEntries;
+		this.entries = new ConcurrentHashMap<>(Math.min(maxEntries, 1024) * 4 / 3 + 1);
+	}
+
+	@Override
+	public ResolvedFunction<T> getFunction(RestOperation operation) {
+		return getFunction(operation.getMethod(), operation.getPath());
+	}
+
+	@Override
+	public ResolvedFunction<T> getFunction(HttpMethod method, CharSequence path) {
+		Key key = new Key(method, path.toString());
+		Entry<T> entry = entries.get(key);
+		if (entry != null) {
+			entry.hit();
+			return entry.resolved;
+		}
+
+		ResolvedFunction<T> resolved = registry.getFunction(method, path);
+		if (resolved != null && entries.putIfAbsent(key, new Entry<>(resolved)) == null
+				&& size.incrementAndGet() > maxEntries) {
+			evict();
+		}
+		return resolved;
+	}
+
+	@Override
+	public Set<HttpMethod> getAllowedMethods(CharSequence path) {
+		return registry.getAllowedMethods(path);
+	}
+
+	@Override
+	public void addFunction(RestOperation operation, T function) {
+		throw new UnsupportedOperationException("Caching registry is immutable");
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("Caching registry is immutable");
+	}
+
+	/**
+	 * @return number of remembered paths
+	 */
+	public int getSize() {
+		return size.get();
+	}
+
+	/*
+	 * Approximate LFU. Threads that find another thread evicting move on, the evicting thread
+	 * keeps going until the cache fits again.
+	 */
+	private void evict() {
+		if (!evicting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			while (size.get() > maxEntries) {
+				Key victimKey = null;
+				Entry<T> victim = null;
+				int victimFrequency = Integer.MAX_VALUE;
+				for (int i = 0; i < EVICTION_SAMPLE_SIZE; i++) {
+					if (hand == null || !hand.hasNext()) {
+						hand = entries.entrySet().iterator();
+						if (!hand.hasNext()) {
+							return;
+						}
+					}
+					Map.Entry<Key, Entry<T>> candidate = hand.next();
+					Entry<T> entry = candidate.getValue();
+					int frequency = entry.frequency;
+					if (frequency < victimFrequency) {
+						victimKey = candidate.getKey();
+						victim = entry;
+						victimFrequency = frequency;
+					}
+					entry.frequency = frequency >>> 1;
+				}
+				if (entries.remove(victimKey, victim)) {
+					size.decrementAndGet();
+				}
+			}
+		} finally {
+			evicting.set(false);
+		}
+	}
+
+	private static final class Key {
+		private final HttpMethod method;
+		private final String path;
+		private final int hash;
+
+		Key(HttpMethod method, String path) {
+			this.method = method;
+			this.path = path;
+			this.hash = 31 * path.hashCode() + method.ordinal();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return method == other.method && path.equals(other.path);
+		}
+	}
+
+	private static final class Entry<T> {
+		private final ResolvedFunction<T> resolved;
+
+		/*
+		 * Racy on purpose: a lost increment only makes the count a little lower, and a plain field
+		 * keeps hot entries from bouncing a contended cache line between threads.
+		 */
+		private int frequency = 1;
+
+		Entry(ResolvedFunction<T> resolved) {
+			this.resolved = resolved;
+		}
+
+		void hit() {
+			int f = frequency;
+			if (f < MAX_FREQUENCY) {
+				frequency = f + 1;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+package com.herodigital.wcm.internal.rest.registry;
+
+import java.util.Arrays;
+
+/**
+ * Reusable scratch space for a single path lookup. Holds the offsets of wildcard 
+ * segments captured while walking the trie so that a lookup does not need
+ * to allocate substrings until a function has been found. Wildcard names are 
+ * known by the matched node.
+ * <p>
+ * Instances are not thread safe. Use one per thread.
+ * 
+ * @author joel.epps
+ *
+ */
+class PathMatch {
+	
+	private static final int INITIAL_CAPACITY = 8;
+	
+	private static final ThreadLocal<PathMatch> CURRENT = new ThreadLocal<PathMatch>() {
+		@Override
+		protected PathMatch initialValue() {
+			return new PathMatch();
+		}
+	};
+
+	private static final String[] NO_VALUES = new String[0];
+
+	private int[] offsets;
+	private int count;
+	
+	PathMatch() {
+		this.offsets = new int[INITIAL_CAPACITY * 2];
+		this.count = 0;
+	}
+	
+	/**
+	 * @return the reset instance of the current thread
+	 */
+	static PathMatch forCurrentThread() {
+		PathMatch match = CURRENT.get();
+		match.reset();
+		return match;
+	}
+	
+	/**
+	 * Record wildcard capture at position {@code index}. Any captures after {@code index}
+	 * are discarded.
+	 * 
+	 * @param index capture position
+	 * @param start start offset of the segment in the path (inclusive)
+	 * @param end end offset of the segment in the path (exclusive)
+	 */
+	void capture(int index, int start, int end) {
+		if (index * 2 >= offsets.length) {
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		}
+		offsets[index * 2] = start;
+		offsets[index * 2 + 1] = end;
+		count = index + 1;
+	}
+	
+	/**
+	 * Discard all captures starting at position {@code index}.
+	 * 
+	 * @param index capture position
+	 */
+	void truncate(int index) {
+		count = index;
+	}
+	
+	int getCount() {
+		return count;
+	}
+	
+	int getStart(int index) {
+		return offsets[index * 2];
+	}
+	
+	int getEnd(int index) {
+		return offsets[index * 2 + 1];
+	}
+	
+	void reset() {
+		count = 0;
+	}
+	
+	/**
+	 * Creates the wildcard values for the current captures, in path order.
+	 * 
+	 * @param path path the captures were taken from
+	 * @return values, empty if there are no captures
+	 */
+	String[] toWildcardValues(CharSequence path) {
+		if (count == 0) {
+			return NO_VALUES;
+		}
+		String[] values = new String[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = path.subSequence(getStart(i), getEnd(i)).toString();
+		}
+		return values;
+	}
+	
+	/**
+	 * Offset of the first segment of {@code path}. Same segmentation as {@link RestOperation#getPathSegments()},
+	 * a single leading slash is ignored.
+	 */
+	static int pathStart(CharSequence path) {
+		return (path.length() > 0 && path.charAt(0) == '/') ? 1 : 0;
+	}
+	
+	/**
+	 * Offset after the last segment of {@code path}. Same segmentation as {@link RestOperation#getPathSegments()},
+	 * trailing slashes are ignored.
+	 */
+	static int pathEnd(CharSequence path, int start) {
+		int end = path.length();
+		while (end > start && path.charAt(end - 1) == '/') {
+			end--;
+		}
+		return end;
+	}
+	
+	static int indexOf(CharSequence s, char c, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (s.charAt(i) == c) {
+				return i;
+			}
+		}
+		return end;
+	}
+	
+	/**
+	 * Same ordering as {@link String#compareTo(String)} without creating the substring.
+	 */
+	static int compare(String key, CharSequence s, int start, int end) {
+		int keyLength = key.length();
+		int length = end - start;
+		int min = Math.min(keyLength, length);
+		for (int i = 0; i < min; i++) {
+			char c1 = key.charAt(i);
+			char c2 = s.charAt(start + i);
+			if (c1 != c2) {
+				return c1 - c2;
+			}
+		}
+		return keyLength - length;
+	}
+	
+	/**
+	 * Same value as {@link String#hashCode()} of the substring without creating it.
+	 */
+	static int hash(CharSequence s, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			h = 31 * h + s.charAt(i);
+		}
+		return h;
+	}
+
+}
@@ -4,7 +4,11 @@ package com.herodigital.wcm.internal.rest.registry;
  * Segment of a URI path. 
  * <p>
  * A segment string surrounded by curly braces (example: {string})
- * represents a wildcard segment which will match any string. 
+ * represents a wildcard segment which will match any string. A wildcard
+ * may be constrained by a type after a colon (example: {id:long}), 
+ * see {@link WildcardType}. A wildcard whose name ends with an asterisk 
+ * (example: {path*}) is a tail wildcard, it matches the rest of the path 
+ * and must be the last segment.
  * 
  * @author joel.epps
  *
@@ -15,19 +19,35 @@ public class PathSegment {
 
 	private String value;
 	private String wildcardName;
+	private WildcardType wildcardType;
+	private boolean tail;
 
-	public PathSegment(String value) {
+	public PathSegment(String value) throws IllegalArgumentException {
 		if (value.startsWith("{") && value.endsWith("}")) {
-			this.value = "*";
-			this.wildcardName = value.substring(1, value.length() - 1);
+			String wildcard = value.substring(1, value.length() - 1);
+			int colon = wildcard.indexOf(':');
+			String name = (colon < 0) ? wildcard : wildcard.substring(0, colon);
+			this.tail = name.endsWith("*");
+			this.wildcardName = tail ? name.substring(0, name.length() - 1) : name;
+			this.wildcardType = (colon < 0) ? WildcardType.ANY : WildcardType.fromString(wildcard.substring(colon + 1));
+			if (tail && !wildcardType.isAny()) {
+				throw new IllegalArgumentException("Tail wildcard " + value + " can not have a type");
+			}
+			if (tail) {
+				this.value = "**";
+			} else {
+				this.value = wildcardType.isAny() ? "*" : "*:" + wildcardType;
+			}
 		} else {
 			this.value = value;
 			this.wildcardName = null;
+			this.wildcardType = null;
 		}
 	}
 
 	/**
-	 * Value of the segment. "*" if this segment is a wildcard. 
+	 * Value of the segment. "*" if this segment is an untyped wildcard, "*:" followed by 
+	 * the type if it is a typed wildcard (example: *:long), "**" if it is a tail wildcard. 
 	 * 
 	 * @return
 	 */
@@ -44,15 +64,37 @@ public class PathSegment {
 		return wildcardName;
 	}
 	
+	/**
+	 * The type of this wildcard segment. Denoted by the text after the colon.
+	 * 
+	 * @return type, {@link WildcardType#ANY} if untyped, or null if this segment is not a wildcard
+	 */
+	public WildcardType getWildcardType() {
+		return wildcardType;
+	}
+	
 	public boolean isWildCard() {
 		return getWildcardName() != null;
 	}
+	
+	/**
+	 * @return true if this wildcard matches the rest of the path, one or more segments
+	 */
+	public boolean isTail() {
+		return tail;
+	}
 
+	/*
+	 * Equality includes the kind of segment, so a literal segment never equals a wildcard 
+	 * with the same value, e.g. a literal "**" and a tail wildcard.
+	 */
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((value == null) ? 0 : value.hashCode());
+		result = prime * result + (isWildCard() ? 1 : 0);
+		result = prime * result + (tail ? 1 : 0);
 		return result;
 	}
 
@@ -70,12 +112,19 @@ public class PathSegment {
 				return false;
 		} else if (!value.equals(other.value))
 			return false;
+		if (isWildCard() != other.isWildCard() || tail != other.tail)
+			return false;
 		return true;
 	}
 
 	@Override
 	public String toString() {
-		return ((wildcardName != null) ? "{" + wildcardName + "}" : value);
+		if (wildcardName == null) {
+			return value;
+		} else if (tail) {
+			return "{" + wildcardName + "*}";
+		}
+		return wildcardType.isAny() ? "{" + wildcardName + "}" : "{" + wildcardName + ":" + wildcardType + "}";
 	}
 
 }
@@ -1,6 +1,8 @@
 package com.herodigital.wcm.internal.rest.registry;
 
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Registry of REST functions. 
@@ -15,27 +17,116 @@ import java.util.Map;
 public interface RestFunctionRegistry<T> {
 	
 	/**
+	 * Function found for a path along with the values of its wildcard segments.
+	 * <p>
+	 * Wildcards are exposed in path order. Names are shared by all lookups of the 
+	 * same function, only the values are created per lookup. Instances may be shared by concurrent 
+	 * requests of the same path, see {@link CachingRestFunctionRegistry}.
 	 * 
 	 * @author joel.epps
 	 *
 	 * @param <T>
 	 */
 	public static class ResolvedFunction<T> {
-		private T function;
-		private Map<String, String> wildcards;
+		private static final String[] NO_WILDCARDS = new String[0];
+		
+		private final T function;
+		private final String[] wildcardNames;
+		private final String[] wildcardValues;
+		private final Object[] typedWildcardValues;
+		private volatile Map<String, String> wildcards;
 
 		public ResolvedFunction(T function, Map<String, String> wildcards) {
 			super();
 			this.function = function;
 			this.wildcards = wildcards;
+			if (wildcards == null || wildcards.isEmpty()) {
+				this.wildcardNames = NO_WILDCARDS;
+				this.wildcardValues = NO_WILDCARDS;
+			} else {
+				this.wildcardNames = wildcards.keySet().toArray(new String[wildcards.size()]);
+				this.wildcardValues = new String[wildcardNames.length];
+				for (int i = 0; i < wildcardNames.length; i++) {
+					wildcardValues[i] = wildcards.get(wildcardNames[i]);
+				}
+			}
+			this.typedWildcardValues = wildcardValues;
+		}
+
+		/**
+		 * @param function function
+		 * @param wildcardNames wildcard names in path order, not copied
+		 * @param wildcardValues wildcard values in path order, not copied
+		 */
+		public ResolvedFunction(T function, String[] wildcardNames, String[] wildcardValues) {
+			this(function, wildcardNames, wildcardValues, wildcardValues);
+		}
+
+		/**
+		 * @param function function
+		 * @param wildcardNames wildcard names in path order, not copied
+		 * @param wildcardValues wildcard values in path order, not copied
+		 * @param typedWildcardValues wildcard values converted by their {@link WildcardType}, not copied
+		 */
+		public ResolvedFunction(T function, String[] wildcardNames, String[] wildcardValues, Object[] typedWildcardValues) {
+			super();
+			this.function = function;
+			this.wildcardNames = wildcardNames;
+			this.wildcardValues = wildcardValues;
+			this.typedWildcardValues = typedWildcardValues;
 		}
 
 		public T getFunction() {
 			return function;
 		}
+		
+		/**
+		 * @return number of wildcard segments in the matched path
+		 */
+		public int getWildcardCount() {
+			return wildcardValues.length;
+		}
+		
+		/**
+		 * @param index position of the wildcard among the wildcards of the path
+		 * @return wildcard name
+		 */
+		public String getWildcardName(int index) {
+			return wildcardNames[index];
+		}
+		
+		/**
+		 * @param index position of the wildcard among the wildcards of the path
+		 * @return value of the wildcard segment in the requested path
+		 */
+		public String getWildcardValue(int index) {
+			return wildcardValues[index];
+		}
+		
+		/**
+		 * @param index position of the wildcard among the wildcards of the path
+		 * @return value converted by the {@link WildcardType} of the wildcard, example: a {@link Long} for {@code {id:long}}. 
+		 * Same as {@link #getWildcardValue(int)} for untyped wildcards.
+		 */
+		public Object getTypedWildcardValue(int index) {
+			return typedWildcardValues[index];
+		}
 
+		/**
+		 * Wildcard name to value map. Created on first use, prefer the indexed accessors on hot paths.
+		 * 
+		 * @return map
+		 */
 		public Map<String, String> getWildcards() {
-			return wildcards;
+			Map<String, String> result = wildcards;
+			if (result == null) {
+				Map<String, String> map = new HashMap<String, String>(wildcardNames.length * 2);
+				for (int i = 0; i < wildcardNames.length; i++) {
+					map.put(wildcardNames[i], wildcardValues[i]);
+				}
+				wildcards = result = map;
+			}
+			return result;
 		}
 
 	}
@@ -49,6 +140,25 @@ public interface RestFunctionRegistry<T> {
 	 */
 	public ResolvedFunction<T> getFunction(RestOperation operation);
 
+	/**
+	 * Get the REST function for a raw request path. Equivalent to {@link #getFunction(RestOperation)}
+	 * but does not require a {@link RestOperation} to be created for each lookup.
+	 * 
+	 * @param method HTTP method
+	 * @param path request path, example: /api/user/123
+	 * @return {@link ResolvedFunction} or null if no match is found
+	 */
+	public ResolvedFunction<T> getFunction(HttpMethod method, CharSequence path);
+
+	/**
+	 * Get the HTTP methods that have a function registered for {@code path}. Used to 
+	 * tell apart an unknown path from a known path requested with an unsupported method.
+	 * 
+	 * @param path request path, example: /api/user/123
+	 * @return methods, empty if no function exists for any method
+	 */
+	public Set<HttpMethod> getAllowedMethods(CharSequence path);
+
 	/**
 	 * Add a REST function to the registry.
 	 * 
@@ -0,0 +1,90 @@
+package com.herodigital.wcm.internal.rest.registry;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Immutable RestFunctionRegistry implementation optimized for lookups. Created by {@link RestFunctionRegistryTrie#freeze()}.
+ * <p>
+ * Matching behaves exactly like {@link RestFunctionRegistryTrie}, but each node is compiled into flat arrays 
+ * (see {@link RestFunctionRegistryCompiledTrieNode}) instead of a {@code HashMap} of {@link PathSegment} keys.
+ * This means fewer pointer chases and no hash code computation on stored keys during a lookup. 
+ * <p>
+ * Instances are safe for use by multiple threads. {@link #addFunction(RestOperation, Object)} and 
+ * {@link #clear()} throw {@link UnsupportedOperationException}.
+ * 
+ * @author joel.epps
+ *
+ * @param <T> Function class/type
+ */
+public class RestFunctionRegistryCompiledTrie<T> implements RestFunctionRegistry<T> {
+	
+	private static final HttpMethod[] METHODS = HttpMethod.values();
+	
+	/*
+	 * One trie per HTTP method, indexed by HttpMethod#ordinal()
+	 */
+	private final RestFunctionRegistryCompiledTrieNode<T>[] roots;
+	
+	@SuppressWarnings("unchecked")
+	RestFunctionRegistryCompiledTrie(RestFunctionRegistryTrieNode<T>[] roots) {
+		this.roots = new RestFunctionRegistryCompiledTrieNode[roots.length];
+		for (int i = 0; i < roots.length; i++) {
+			this.roots[i] = new RestFunctionRegistryCompiledTrieNode<T>(roots[i]);
+		}
+	}
+
+	@Override
+	public ResolvedFunction<T> getFunction(RestOperation operation) {
+		return getFunction(operation.getMethod(), operation.getPath());
+	}
+
+	@Override
+	public ResolvedFunction<T> getFunction(HttpMethod method, CharSequence path) {
+		int start = PathMatch.pathStart(path);
+		int end = PathMatch.pathEnd(path, start);
+		
+		PathMatch match = PathMatch.forCurrentThread();
+		RestFunctionRegistryCompiledTrieNode<T> node = roots[method.ordinal()].getFunctionNode(path, start, end, 0, match);
+		if (node == null) {
+			return null;
+		}
+		String[] values = match.toWildcardValues(path);
+		return new ResolvedFunction<T>(node.getFunction(), node.getWildcardNames(), values, WildcardType.convert(node.getWildcardTypes(), values));
+	}
+	
+	@Override
+	public Set<HttpMethod> getAllowedMethods(CharSequence path) {
+		int start = PathMatch.pathStart(path);
+		int end = PathMatch.pathEnd(path, start);
+		
+		Set<HttpMethod> allowed = EnumSet.noneOf(HttpMethod.class);
+		for (HttpMethod method : METHODS) {
+			if (roots[method.ordinal()].getFunctionNode(path, start, end, 0, PathMatch.forCurrentThread()) != null) {
+				allowed.add(method);
+			}
+		}
+		return allowed;
+	}
+
+	@Override
+	public void addFunction(RestOperation operation, T function) {
+		throw new UnsupportedOperationException("Compiled registry is immutable");
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("Compiled registry is immutable");
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (HttpMethod method : METHODS) {
+			sb.append(method).append('\n');
+			roots[method.ordinal()].appendTo(sb, 1);
+		}
+		return sb.toString();
+	}
+
+}
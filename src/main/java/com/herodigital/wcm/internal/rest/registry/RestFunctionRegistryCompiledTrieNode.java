@@ -0,0 +1,183 @@
+package com.herodigital.wcm.internal.rest.registry;
+
+/**
+ * Immutable node of a {@link RestFunctionRegistryCompiledTrie}.
+ * <p>
+ * Non-wildcard children are stored in an open addressing hash table made of parallel arrays
+ * ({@code hashes}, {@code keys}, {@code children}) sized to a power of two with a load factor of 
+ * at most 0.5. The hash of a path segment is computed in place with the same function as 
+ * {@link String#hashCode()}, so probing never creates a substring. The wildcard children 
+ * (with their types, most constrained first), the tail wildcard child, the function and the names and types of the 
+ * wildcards leading to it are held in dedicated fields.
+ * 
+ * @author joel.epps
+ *
+ * @param <T> Function class/type
+ */
+final class RestFunctionRegistryCompiledTrieNode<T> {
+	
+	private static final int[] NO_HASHES = new int[0];
+	private static final String[] NO_KEYS = new String[0];
+	
+	private final String segment;
+	private final int mask;
+	private final int[] hashes;
+	private final String[] keys;
+	private final RestFunctionRegistryCompiledTrieNode<T>[] children;
+	private final RestFunctionRegistryCompiledTrieNode<T>[] wildcardChildren;
+	private final WildcardType[] wildcardChildTypes;
+	private final RestFunctionRegistryCompiledTrieNode<T> tailChild;
+	private final T function;
+	private final String[] wildcardNames;
+	private final WildcardType[] wildcardTypes;
+	
+	@SuppressWarnings("unchecked")
+	RestFunctionRegistryCompiledTrieNode(RestFunctionRegistryTrieNode<T> node) {
+		PathSegment nodeSegment = node.getSegment();
+		this.segment = (nodeSegment == null) ? null : nodeSegment.toString();
+		this.function = node.getFunction();
+		this.wildcardNames = node.getWildcardNames();
+		this.wildcardTypes = node.getWildcardTypes();
+		
+		RestFunctionRegistryTrieNode<T>[] wildcards = node.getWildcardChildren();
+		this.wildcardChildren = new RestFunctionRegistryCompiledTrieNode[wildcards.length];
+		this.wildcardChildTypes = new WildcardType[wildcards.length];
+		for (int i = 0; i < wildcards.length; i++) {
+			wildcardChildren[i] = new RestFunctionRegistryCompiledTrieNode<T>(wildcards[i]);
+			wildcardChildTypes[i] = wildcards[i].getSegment().getWildcardType();
+		}
+		RestFunctionRegistryTrieNode<T> tail = node.getTailChild();
+		this.tailChild = (tail == null) ? null : new RestFunctionRegistryCompiledTrieNode<T>(tail);
+		
+		String[] literalKeys = node.getLiteralKeys();
+		RestFunctionRegistryTrieNode<T>[] literalChildren = node.getLiteralChildren();
+		if (literalKeys.length == 0) {
+			this.mask = -1;
+			this.hashes = NO_HASHES;
+			this.keys = NO_KEYS;
+			this.children = new RestFunctionRegistryCompiledTrieNode[0];
+		} else {
+			int size = Integer.highestOneBit(literalKeys.length) << 2;
+			this.mask = size - 1;
+			this.hashes = new int[size];
+			this.keys = new String[size];
+			this.children = new RestFunctionRegistryCompiledTrieNode[size];
+			for (int i = 0; i < literalKeys.length; i++) {
+				int hash = literalKeys[i].hashCode();
+				int slot = spread(hash) & mask;
+				while (keys[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				hashes[slot] = hash;
+				keys[slot] = literalKeys[i];
+				children[slot] = new RestFunctionRegistryCompiledTrieNode<T>(literalChildren[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Retrieve the child node whose segment value equals {@code path[start, end)}.
+	 * Wildcard children are not considered.
+	 * 
+	 * @return child or null
+	 */
+	RestFunctionRegistryCompiledTrieNode<T> getLiteralChild(CharSequence path, int start, int end) {
+		if (mask < 0) {
+			return null;
+		}
+		int hash = PathMatch.hash(path, start, end);
+		int slot = spread(hash) & mask;
+		String key;
+		while ((key = keys[slot]) != null) {
+			if (hashes[slot] == hash && PathMatch.compare(key, path, start, end) == 0) {
+				return children[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+	
+	/**
+	 * Same contract as {@link RestFunctionRegistryTrieNode#getFunctionNode(CharSequence, int, int, int, PathMatch)}.
+	 */
+	RestFunctionRegistryCompiledTrieNode<T> getFunctionNode(CharSequence path, int start, int end, int captureIndex, PathMatch match) {
+		int segmentEnd = PathMatch.indexOf(path, '/', start, end);
+		boolean last = segmentEnd == end;
+		
+		// exact segment first
+		RestFunctionRegistryCompiledTrieNode<T> matchedNode = getLiteralChild(path, start, segmentEnd);
+		RestFunctionRegistryCompiledTrieNode<T> result = null;
+		if (matchedNode != null) {
+			result = last ? matchedNode.functionNode() : matchedNode.getFunctionNode(path, segmentEnd + 1, end, captureIndex, match);
+		}
+		
+		// backtrack to the wildcard segments whose type accepts this segment
+		for (int i = 0; result == null && i < wildcardChildren.length; i++) {
+			if (!wildcardChildTypes[i].matches(path, start, segmentEnd)) {
+				continue;
+			}
+			RestFunctionRegistryCompiledTrieNode<T> wildcardChild = wildcardChildren[i];
+			match.capture(captureIndex, start, segmentEnd);
+			result = last ? wildcardChild.functionNode() : wildcardChild.getFunctionNode(path, segmentEnd + 1, end, captureIndex + 1, match);
+			if (result == null) {
+				match.truncate(captureIndex);
+			}
+		}
+		
+		// tail wildcard takes the rest of the path
+		if (result == null && tailChild != null) {
+			match.capture(captureIndex, start, end);
+			result = tailChild;
+		}
+		
+		return result;
+	}
+	
+	private RestFunctionRegistryCompiledTrieNode<T> functionNode() {
+		return (function == null) ? null : this;
+	}
+	
+	T getFunction() {
+		return function;
+	}
+	
+	String[] getWildcardNames() {
+		return wildcardNames;
+	}
+	
+	WildcardType[] getWildcardTypes() {
+		return wildcardTypes;
+	}
+	
+	/*
+	 * Mix high bits into the low bits used for the slot, same as HashMap.
+	 */
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+	
+	void appendTo(StringBuilder sb, int depth) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				children[i].appendNode(sb, depth);
+			}
+		}
+		for (RestFunctionRegistryCompiledTrieNode<T> wildcardChild : wildcardChildren) {
+			wildcardChild.appendNode(sb, depth);
+		}
+		if (tailChild != null) {
+			tailChild.appendNode(sb, depth);
+		}
+	}
+	
+	private void appendNode(StringBuilder sb, int depth) {
+		for (int i = 0; i < depth; i++) sb.append("  ");
+		sb.append(segment);
+		if (function != null) {
+			sb.append('[').append(function).append(']');
+		}
+		sb.append('\n');
+		appendTo(sb, depth + 1);
+	}
+	
+}
@@ -1,7 +1,7 @@
 package com.herodigital.wcm.internal.rest.registry;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * RestFunctionRegistry implementation that uses a trie data structure.
@@ -12,34 +12,87 @@ import java.util.Map;
  */
 public class RestFunctionRegistryTrie<T> implements RestFunctionRegistry<T> {
 	
-	private RestFunctionRegistryTrieNode<T> root;
+	private static final HttpMethod[] METHODS = HttpMethod.values();
+	
+	/*
+	 * One trie per HTTP method, indexed by HttpMethod#ordinal()
+	 */
+	private RestFunctionRegistryTrieNode<T>[] roots;
 	
 	public RestFunctionRegistryTrie() {
-		root = new RestFunctionRegistryTrieNode<T>();
+		roots = newRoots();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <T> RestFunctionRegistryTrieNode<T>[] newRoots() {
+		RestFunctionRegistryTrieNode<T>[] roots = new RestFunctionRegistryTrieNode[METHODS.length];
+		for (int i = 0; i < roots.length; i++) {
+			roots[i] = new RestFunctionRegistryTrieNode<T>();
+		}
+		return roots;
 	}
 
 	@Override
 	public ResolvedFunction<T> getFunction(RestOperation operation) {
-		Map<String, String> wildcardMap = new HashMap<String, String>();
-		T function = root.getFunction(operation.getPathSegments(), wildcardMap);
-		return (function == null) ? null : new ResolvedFunction<T>(function, wildcardMap);
+		return getFunction(operation.getMethod(), operation.getPath());
 	}
 
+	@Override
+	public ResolvedFunction<T> getFunction(HttpMethod method, CharSequence path) {
+		int start = PathMatch.pathStart(path);
+		int end = PathMatch.pathEnd(path, start);
+		
+		PathMatch match = PathMatch.forCurrentThread();
+		RestFunctionRegistryTrieNode<T> node = roots[method.ordinal()].getFunctionNode(path, start, end, 0, match);
+		if (node == null) {
+			return null;
+		}
+		String[] values = match.toWildcardValues(path);
+		return new ResolvedFunction<T>(node.getFunction(), node.getWildcardNames(), values, WildcardType.convert(node.getWildcardTypes(), values));
+	}
+	
+	@Override
+	public Set<HttpMethod> getAllowedMethods(CharSequence path) {
+		int start = PathMatch.pathStart(path);
+		int end = PathMatch.pathEnd(path, start);
+		
+		Set<HttpMethod> allowed = EnumSet.noneOf(HttpMethod.class);
+		for (HttpMethod method : METHODS) {
+			if (roots[method.ordinal()].getFunctionNode(path, start, end, 0, PathMatch.forCurrentThread()) != null) {
+				allowed.add(method);
+			}
+		}
+		return allowed;
+	}
+	
 	@Override
 	public void addFunction(RestOperation operation, T function) {
-		root.addPathSegments(operation.getPathSegments(), function);
+		roots[operation.getMethod().ordinal()].addPathSegments(operation.getPathSegments(), function);
 	}
 
 	@Override
 	public void clear() {
-		root = new RestFunctionRegistryTrieNode<T>();
+		roots = newRoots();
+	}
+	
+	/**
+	 * Compiles the current content of this trie into an immutable, array backed registry that is 
+	 * optimized for lookups. Later changes to this trie are not reflected in the returned registry.
+	 * 
+	 * @return immutable registry
+	 * @see RestFunctionRegistryCompiledTrie
+	 */
+	public RestFunctionRegistryCompiledTrie<T> freeze() {
+		return new RestFunctionRegistryCompiledTrie<T>(roots);
 	}
 	
 	@Override
 	public String toString() {
-		return root.toString();
+		StringBuilder sb = new StringBuilder();
+		for (HttpMethod method : METHODS) {
+			sb.append(method).append(" = ").append(roots[method.ordinal()]).append('\n');
+		}
+		return sb.toString();
 	}
 	
-	
-	
 }
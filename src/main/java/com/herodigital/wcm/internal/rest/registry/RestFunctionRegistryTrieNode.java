@@ -1,35 +1,82 @@
 package com.herodigital.wcm.internal.rest.registry;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 class RestFunctionRegistryTrieNode<T> {
+	
+	private static final String[] NO_KEYS = new String[0];
+	
 	private final PathSegment segment;
 	private final Map<PathSegment, RestFunctionRegistryTrieNode<T>> children;
 	private T function;
 	
+	/*
+	 * Names of the wildcard segments leading to this node, in path order. Only set on nodes
+	 * with a function.
+	 */
+	private String[] wildcardNames;
+	
+	/*
+	 * Types of the wildcard segments leading to this node, in path order. Null if all are untyped.
+	 */
+	private WildcardType[] wildcardTypes;
+	
+	/*
+	 * Lookup view of children. Non-wildcard children are kept sorted by segment value 
+	 * so they can be binary searched against a region of the raw path. Maintained 
+	 * by addPathSegments. Wildcard children are sorted by type, the untyped wildcard last.
+	 */
+	private String[] literalKeys;
+	private RestFunctionRegistryTrieNode<T>[] literalChildren;
+	private RestFunctionRegistryTrieNode<T>[] wildcardChildren;
+	private RestFunctionRegistryTrieNode<T> tailChild;
+	
 	RestFunctionRegistryTrieNode() {
-		this.segment = null;
-		this.children = new HashMap<>();
-		this.function = null;
+		this(null);
 	}
 	
+	@SuppressWarnings("unchecked")
 	public RestFunctionRegistryTrieNode(PathSegment segment) {
 		this.segment = segment;
 		this.children = new HashMap<>();
 		this.function = null;
+		this.literalKeys = NO_KEYS;
+		this.literalChildren = new RestFunctionRegistryTrieNode[0];
+		this.wildcardChildren = new RestFunctionRegistryTrieNode[0];
 	}
 	
 	public void addPathSegments(List<PathSegment> pathSegments, T function) throws IllegalArgumentException {
+		List<String> names = new ArrayList<>();
+		List<WildcardType> types = new ArrayList<>();
+		boolean typed = false;
+		for (PathSegment pathSegment : pathSegments) {
+			if (pathSegment.isWildCard()) {
+				names.add(pathSegment.getWildcardName());
+				types.add(pathSegment.getWildcardType());
+				typed |= !pathSegment.getWildcardType().isAny();
+			}
+		}
+		addPathSegments(pathSegments, function, names.toArray(new String[names.size()]), 
+				typed ? types.toArray(new WildcardType[types.size()]) : null);
+	}
+	
+	private void addPathSegments(List<PathSegment> pathSegments, T function, String[] wildcardNames, WildcardType[] wildcardTypes) throws IllegalArgumentException {
 		PathSegment curSegment = pathSegments.remove(0);
+		if (curSegment.isTail() && !pathSegments.isEmpty()) {
+			throw new IllegalArgumentException("Cannot register [" + function 
+					+ "]. Tail wildcard " + curSegment + " must be the last segment");
+		}
 		
 		RestFunctionRegistryTrieNode<T> childNode = children.get(curSegment);
 		if (childNode == null) {
 			childNode = new RestFunctionRegistryTrieNode<T>(curSegment);
 			children.put(curSegment, childNode);
+			addLookupChild(childNode);
 		} else {
 			// Check for attempts to register a wilcard segment where one already exists
 			if (childNode.segment.isWildCard() && curSegment.isWildCard()) {
@@ -51,95 +98,175 @@ class RestFunctionRegistryTrieNode<T> {
 						+ "]. Function [" + childNode.function + "] already exists");
 			}
 			childNode.function = function;
+			childNode.wildcardNames = wildcardNames;
+			childNode.wildcardTypes = wildcardTypes;
 		} else {
 			// recurse
-			childNode.addPathSegments(pathSegments, function);
+			childNode.addPathSegments(pathSegments, function, wildcardNames, wildcardTypes);
 		}
 		
 	}
 	
+	private void addLookupChild(RestFunctionRegistryTrieNode<T> childNode) {
+		if (childNode.segment.isTail()) {
+			tailChild = childNode;
+			return;
+		} else if (childNode.segment.isWildCard()) {
+			WildcardType type = childNode.segment.getWildcardType();
+			int insertAt = 0;
+			while (insertAt < wildcardChildren.length && wildcardChildren[insertAt].segment.getWildcardType().compareTo(type) < 0) {
+				insertAt++;
+			}
+			RestFunctionRegistryTrieNode<T>[] nodes = Arrays.copyOf(wildcardChildren, wildcardChildren.length + 1);
+			System.arraycopy(wildcardChildren, insertAt, nodes, insertAt + 1, wildcardChildren.length - insertAt);
+			nodes[insertAt] = childNode;
+			wildcardChildren = nodes;
+			return;
+		}
+		String key = childNode.segment.getValue();
+		int insertAt = -(Arrays.binarySearch(literalKeys, key) + 1);
+		
+		String[] keys = new String[literalKeys.length + 1];
+		RestFunctionRegistryTrieNode<T>[] nodes = Arrays.copyOf(literalChildren, literalChildren.length + 1);
+		System.arraycopy(literalKeys, 0, keys, 0, insertAt);
+		System.arraycopy(literalKeys, insertAt, keys, insertAt + 1, literalKeys.length - insertAt);
+		System.arraycopy(literalChildren, insertAt, nodes, insertAt + 1, literalChildren.length - insertAt);
+		keys[insertAt] = key;
+		nodes[insertAt] = childNode;
+		
+		literalKeys = keys;
+		literalChildren = nodes;
+	}
+	
+	/**
+	 * Retrieve the child node whose segment value equals {@code path[start, end)}.
+	 * Wildcard children are not considered.
+	 * 
+	 * @return child or null
+	 */
+	RestFunctionRegistryTrieNode<T> getLiteralChild(CharSequence path, int start, int end) {
+		int low = 0;
+		int high = literalKeys.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = PathMatch.compare(literalKeys[mid], path, start, end);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return literalChildren[mid];
+			}
+		}
+		return null;
+	}
+	
 	/**
-	 * Retrieve the matching function {@code <T>} from the trie data structure.
+	 * Retrieve the matching node from the trie data structure by walking the raw path.
+	 * <p>
+	 * Segments are compared in place using offsets into {@code path}. No substrings are created.
 	 * 
-	 * @param segments The search path (URL) consisting of individual {@link PathSegment} objects.
-	 * Each path segment maps to a level of the trie.
-	 * @param wildcardMap This map will be updated with wildcard key/value pairs if resolved
-	 * path resulted in the use of wildcard segments.
+	 * @param path The search path (URL).
+	 * @param start Offset of the first character of the current segment
+	 * @param end Offset after the last character of the path (trailing slashes excluded)
+	 * @param captureIndex Number of wildcard segments captured so far
+	 * @param match Receives the offsets of captured wildcard segments, named by {@link #getWildcardNames()} of the result
 	 * 
-	 * @return resolved {@code <T>} or null
+	 * @return matched node with a function or null
 	 */
-	public T getFunction(List<PathSegment> segments, Map<String, String> wildcardMap) {
-		PathSegment currentSeg = segments.remove(0); // pop the next segment off the list
+	RestFunctionRegistryTrieNode<T> getFunctionNode(CharSequence path, int start, int end, int captureIndex, PathMatch match) {
+		int segmentEnd = PathMatch.indexOf(path, '/', start, end);
+		boolean last = segmentEnd == end;
 		
-		try {
-			// WALK THE TREE #1
-			// Check child nodes for matching segment key
-			RestFunctionRegistryTrieNode<T> matchedNode = children.get(currentSeg);
-			
-			// BASE CASE #1
-			// At tail of search path (last segment) and found node with matching segment for key
-			if (segments.isEmpty() && matchedNode != null) {
-				return matchedNode.function; // may be null
+		// WALK THE TREE #1
+		// Check child nodes for matching segment key
+		RestFunctionRegistryTrieNode<T> matchedNode = getLiteralChild(path, start, segmentEnd);
+		RestFunctionRegistryTrieNode<T> result = null;
+		if (matchedNode != null) {
+			// BASE CASE #1: at tail of search path (last segment), otherwise continue down tree
+			result = last ? matchedNode.functionNode() : matchedNode.getFunctionNode(path, segmentEnd + 1, end, captureIndex, match);
+		}
+		
+		// WALK THE TREE #2
+		// This means lookup based on matching segment failed. Now try tree traversal using
+		// a wildcard segment instead. Typed wildcards are only entered if the segment is a
+		// valid value of their type, so non-matching branches are pruned right here.
+		/*
+		 * RECURSIVE BACKTRACK CALL
+		 * If function wasn't found, it may be that we took a wrong turn down
+		 * a non-wildcard node. Check for nodes with wildcard segments as we
+		 * go back up the recursive stack.
+		 * 
+		 * Example:
+		 * - Registered paths:
+		 *     - /api/basic/auth/op1
+		 *     - /api/{type}/op2
+		 * - Queried path: 
+		 *     - /api/basic/op2
+		 * - Code will first try the non-wildcard "basic" segment looking for "op2"
+		 *   before backtracking and attempting the wildcard {type} segment.
+		 */
+		for (int i = 0; result == null && i < wildcardChildren.length; i++) {
+			RestFunctionRegistryTrieNode<T> wildcardChild = wildcardChildren[i];
+			if (!wildcardChild.segment.getWildcardType().matches(path, start, segmentEnd)) {
+				continue;
 			}
+			match.capture(captureIndex, start, segmentEnd);
 			
-			// RECURSIVE CALL
-			// Have not reached tail yet, continue down tree
-			T function = (matchedNode == null) ? null : matchedNode.getFunction(segments, wildcardMap);
+			// BASE CASE #2: at tail of search path (last segment) and found wildcard segment at this location
+			result = last ? wildcardChild.functionNode() : wildcardChild.getFunctionNode(path, segmentEnd + 1, end, captureIndex + 1, match);
 			
-			if (function == null) {
-				// This means lookup based on matching segment failed. Now try tree traversal using
-				// a wildcard segment instead.
-				
-				// WALK THE TREE #2
-				// Check child nodes for wildcard based segment
-				matchedNode = children.get(PathSegment.WILDCARD);
-				
-				if (matchedNode != null) {
-					// Add wildcard to wildcardMap
-					wildcardMap.put(matchedNode.segment.getWildcardName(), currentSeg.getValue());
-					
-					// BASE CASE #2
-					// At tail of search path (last segment) and found wildcard segment at this location
-					if (segments.isEmpty()) {
-						return matchedNode.function; // may be null
-					}
-					
-					/*
-					 * RECURSIVE BACKTRACK CALL
-					 * If function wasn't found, it may be that we took a wrong turn down
-					 * a non-wildcard node. Check for nodes with wildcard segments as we
-					 * go back up the recursive stack.
-					 * 
-					 * Example:
-					 * - Registered paths:
-					 *     - /api/basic/auth/op1
-					 *     - /api/{type}/op2
-					 * - Queried path: 
-					 *     - /api/basic/op2
-					 * - Code will first try the non-wildcard "basic" segment looking for "op2"
-					 *   before backtracking and attempting the wildcard {type} segment.
-					 */
-					function = matchedNode.getFunction(segments, wildcardMap);
-					
-					// If function wasn't found via this node and its children, remove this 
-					// wildcard segment from wildcardMap
-					if (function == null) {
-						wildcardMap.remove(matchedNode.segment.getWildcardName());
-					}
-				}
+			// If function wasn't found via this node and its children, drop this capture
+			if (result == null) {
+				match.truncate(captureIndex);
 			}
-			
-			return function;
-			
-		} finally {
-			/*
-			 * Guarantees segments popped will also be re-pushed.
-			 * This is required for support of the recursive backtracking.
-			 * Also want to be a good citizen and leave the list in the same
-			 * state as it was provided.
-			 */
-			segments.add(0, currentSeg);
 		}
+		
+		// WALK THE TREE #3
+		// Last resort, a tail wildcard takes the rest of the path as one capture without walking it.
+		// Its node always has a function since it is the last segment.
+		if (result == null && tailChild != null) {
+			match.capture(captureIndex, start, end);
+			result = tailChild;
+		}
+		
+		return result;
+	}
+	
+	private RestFunctionRegistryTrieNode<T> functionNode() {
+		return (function == null) ? null : this;
+	}
+	
+	T getFunction() {
+		return function;
+	}
+	
+	String[] getWildcardNames() {
+		return wildcardNames;
+	}
+	
+	WildcardType[] getWildcardTypes() {
+		return wildcardTypes;
+	}
+	
+	PathSegment getSegment() {
+		return segment;
+	}
+	
+	String[] getLiteralKeys() {
+		return literalKeys;
+	}
+	
+	RestFunctionRegistryTrieNode<T>[] getLiteralChildren() {
+		return literalChildren;
+	}
+	
+	RestFunctionRegistryTrieNode<T>[] getWildcardChildren() {
+		return wildcardChildren;
+	}
+	
+	RestFunctionRegistryTrieNode<T> getTailChild() {
+		return tailChild;
 	}
 	
 	@Override
@@ -32,11 +32,10 @@ public class RestOperation {
 	/**
 	 * Splits the path into a list {@link PathSegment} objects.
 	 * 
-	 * @return List of {@link PathSegment} objects starting with {@link HttpMethod}
+	 * @return List of {@link PathSegment} objects, excluding the {@link HttpMethod}
 	 */
 	public List<PathSegment> getPathSegments() {
 		List<PathSegment> result = new ArrayList<>();
-		result.add(new PathSegment(method.toString()));
 		
 		String thePath = path;
 		if (path.startsWith("/")) {
@@ -51,13 +50,21 @@ public class RestOperation {
 		return result;
 	}
 	
+	/**
+	 * Parses [http_method]:[path]. Only the first colon separates the method, the path may 
+	 * contain typed wildcards (example: GET:/api/user/{id:long}).
+	 * 
+	 * @param s string
+	 * @return operation
+	 * @throws IllegalArgumentException if {@code s} is malformed
+	 */
 	public static RestOperation fromString(String s) {
-		String[] split = s.split(":");
-		if (split.length != 2) {
+		int colon = s.indexOf(':');
+		if (colon <= 0 || colon == s.length() - 1) {
 			throw new IllegalArgumentException("Failed to parse RestOperation " + s);
 		}
-		HttpMethod method = HttpMethod.valueOf(split[0]);
-		return new RestOperation(method, split[1]);
+		HttpMethod method = HttpMethod.valueOf(s.substring(0, colon));
+		return new RestOperation(method, s.substring(colon + 1));
 	}
 
 	@Override
@@ -0,0 +1,212 @@
+package com.herodigital.wcm.internal.rest.registry;
+
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Constraint of a wildcard segment, the part after the colon in {@code {name:type}}. 
+ * <p>
+ * Supported types:
+ * <ul>
+ * <li>{@code {id:long}} - 64 bit integer, value is a {@link Long}</li>
+ * <li>{@code {id:int}} - 32 bit integer, value is an {@link Integer}</li>
+ * <li>{@code {id:uuid}} - UUID in its canonical 8-4-4-4-12 hex form, value is a {@link UUID}</li>
+ * <li>{@code {code:[A-Z]{3}}} - anything else is a regular expression the whole segment must match, value is a {@link String}</li>
+ * <li>{@code {name}} - no constraint, value is a {@link String}</li>
+ * </ul>
+ * A segment is checked against the type in place while the trie is walked, so a branch whose type does not 
+ * match is skipped without creating a substring. When several wildcard segments can follow the same path, 
+ * they are tried from the most to the least constrained: int, long, uuid, regular expressions, untyped.
+ * 
+ * @author joel.epps
+ *
+ */
+public final class WildcardType implements Comparable<WildcardType> {
+	
+	private enum Kind {
+		INT, LONG, UUID, PATTERN, ANY
+	}
+	
+	public static final WildcardType ANY = new WildcardType(Kind.ANY, null);
+	public static final WildcardType INT = new WildcardType(Kind.INT, null);
+	public static final WildcardType LONG = new WildcardType(Kind.LONG, null);
+	public static final WildcardType UUID = new WildcardType(Kind.UUID, null);
+	
+	private final Kind kind;
+	private final Pattern pattern;
+	
+	private WildcardType(Kind kind, Pattern pattern) {
+		this.kind = kind;
+		this.pattern = pattern;
+	}
+	
+	/**
+	 * @param spec type after the colon, null or empty for {@link #ANY}
+	 * @return type
+	 * @throws IllegalArgumentException if {@code spec} is not a valid regular expression
+	 */
+	public static WildcardType fromString(String spec) throws IllegalArgumentException {
+		if (spec == null || spec.isEmpty()) {
+			return ANY;
+		} else if ("int".equals(spec)) {
+			return INT;
+		} else if ("long".equals(spec)) {
+			return LONG;
+		} else if ("uuid".equals(spec)) {
+			return UUID;
+		}
+		try {
+			return new WildcardType(Kind.PATTERN, Pattern.compile(spec));
+		} catch (PatternSyntaxException e) {
+			throw new IllegalArgumentException("Invalid wildcard type " + spec, e);
+		}
+	}
+	
+	/**
+	 * @return true if every segment matches
+	 */
+	public boolean isAny() {
+		return kind == Kind.ANY;
+	}
+	
+	/**
+	 * @param path path
+	 * @param start start offset of the segment (inclusive)
+	 * @param end end offset of the segment (exclusive)
+	 * @return true if {@code path[start, end)} is a valid value of this type
+	 */
+	public boolean matches(CharSequence path, int start, int end) {
+		switch (kind) {
+		case INT:
+			return isInteger(path, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		case LONG:
+			return isInteger(path, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+		case UUID:
+			return isUuid(path, start, end);
+		case PATTERN:
+			return pattern.matcher(path).region(start, end).matches();
+		default:
+			return true;
+		}
+	}
+	
+	/**
+	 * @param value segment value that {@link #matches(CharSequence, int, int)}
+	 * @return value converted to the Java type of this wildcard type
+	 */
+	public Object convert(String value) {
+		switch (kind) {
+		case INT:
+			return Integer.valueOf(value);
+		case LONG:
+			return Long.valueOf(value);
+		case UUID:
+			return java.util.UUID.fromString(value);
+		default:
+			return value;
+		}
+	}
+	
+	/**
+	 * @param types types of the wildcards in path order, null if all are untyped
+	 * @param values values of the wildcards in path order
+	 * @return converted values, {@code values} itself if all are untyped
+	 */
+	static Object[] convert(WildcardType[] types, String[] values) {
+		if (types == null) {
+			return values;
+		}
+		Object[] result = new Object[values.length];
+		for (int i = 0; i < values.length; i++) {
+			result[i] = types[i].convert(values[i]);
+		}
+		return result;
+	}
+	
+	/*
+	 * Optional minus sign and digits within [min, max], accumulated negatively like Long#parseLong so MIN_VALUE fits.
+	 */
+	private static boolean isInteger(CharSequence s, int start, int end, long min, long max) {
+		int i = start;
+		boolean negative = i < end && s.charAt(i) == '-';
+		if (negative) {
+			i++;
+		}
+		if (i == end) {
+			return false;
+		}
+		long limit = negative ? min : -max;
+		long multmin = limit / 10;
+		long result = 0;
+		for (; i < end; i++) {
+			int digit = s.charAt(i) - '0';
+			if (digit < 0 || digit > 9 || result < multmin) {
+				return false;
+			}
+			result *= 10;
+			if (result < limit + digit) {
+				return false;
+			}
+			result -= digit;
+		}
+		return true;
+	}
+	
+	private static boolean isUuid(CharSequence s, int start, int end) {
+		if (end - start != 36) {
+			return false;
+		}
+		for (int i = 0; i < 36; i++) {
+			char c = s.charAt(start + i);
+			if (i == 8 || i == 13 || i == 18 || i == 23) {
+				if (c != '-') {
+					return false;
+				}
+			} else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public int compareTo(WildcardType o) {
+		int cmp = kind.compareTo(o.kind);
+		if (cmp == 0 && kind == Kind.PATTERN) {
+			cmp = pattern.pattern().compareTo(o.pattern.pattern());
+		}
+		return cmp;
+	}
+	
+	@Override
+	public int hashCode() {
+		return kind.hashCode() * 31 + ((pattern == null) ? 0 : pattern.pattern().hashCode());
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof WildcardType))
+			return false;
+		return compareTo((WildcardType) obj) == 0;
+	}
+	
+	@Override
+	public String toString() {
+		switch (kind) {
+		case INT:
+			return "int";
+		case LONG:
+			return "long";
+		case UUID:
+			return "uuid";
+		case PATTERN:
+			return pattern.pattern();
+		default:
+			return "";
+		}
+	}
+
+}
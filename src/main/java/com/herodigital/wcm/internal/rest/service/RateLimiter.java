@@ -0,0 +1,145 @@
+package com.herodigital.wcm.internal.rest.service;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+
+/**
+ * Lock-free rate limit of a single function, see {@link SlingRestFunction#rateLimit()}.
+ * <p>
+ * Implemented as a generic cell rate algorithm (GCRA): the state of a bucket is a single theoretical arrival 
+ * time that is advanced with compare-and-set, which is equivalent to a token bucket without a refill timer. 
+ * <p>
+ * Per client buckets are kept in a bounded map. A bucket whose arrival time has passed is identical to a new 
+ * one, so such buckets are dropped when the map is full. If the map is still full, unknown clients share one 
+ * overflow bucket rather than going unlimited.
+ * 
+ * @author joelepps
+ *
+ */
+public class RateLimiter {
+	
+	/**
+	 * {@link SlingRestFunction#rateLimitBy()} value to limit each client IP address separately.
+	 */
+	public static final String BY_CLIENT_IP = "ip";
+	
+	private static final int DEFAULT_MAX_KEYS = 10000;
+	private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+	
+	private final long intervalNanos;
+	private final long toleranceNanos;
+	private final String by;
+	private final int maxKeys;
+	
+	private final AtomicLong sharedBucket;
+	private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+	private final AtomicBoolean sweeping = new AtomicBoolean();
+	private final AtomicLong lastSweep;
+	
+	/**
+	 * @param permitsPerSecond sustained requests per second
+	 * @param burst requests allowed at once, at least 1
+	 * @param by empty for one limit for all clients, {@link #BY_CLIENT_IP} or a header name
+	 */
+	public RateLimiter(double permitsPerSecond, int burst, String by) {
+		this(permitsPerSecond, burst, by, DEFAULT_MAX_KEYS);
+	}
+	
+	RateLimiter(double permitsPerSecond, int burst, String by, int maxKeys) {
+		this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+		this.toleranceNanos = intervalNanos * (Math.max(burst, 1) - 1);
+		this.by = (by == null) ? "" : by;
+		this.maxKeys = maxKeys;
+		long now = System.nanoTime();
+		this.sharedBucket = new AtomicLong(now);
+		this.lastSweep = new AtomicLong(now - SWEEP_INTERVAL_NANOS);
+	}
+	
+	/**
+	 * Take a permit for {@code request}.
+	 * 
+	 * @param request request
+	 * @return 0 if the request is allowed, otherwise nanoseconds until the next permit is available
+	 */
+	public long tryAcquire(SlingHttpServletRequest request) {
+		String key;
+		if (by.isEmpty()) {
+			key = null;
+		} else if (BY_CLIENT_IP.equals(by)) {
+			key = request.getRemoteAddr();
+		} else {
+			key = request.getHeader(by);
+		}
+		return tryAcquire(key, System.nanoTime());
+	}
+	
+	/**
+	 * @param key client key, null for the shared bucket
+	 * @param now current {@link System#nanoTime()}
+	 * @return see {@link #tryAcquire(SlingHttpServletRequest)}
+	 */
+	long tryAcquire(String key, long now) {
+		AtomicLong bucket = (key == null) ? sharedBucket : bucketOf(key, now);
+		for (;;) {
+			long arrival = bucket.get();
+			long allowedAt = arrival - toleranceNanos;
+			if (now - allowedAt < 0) {
+				return allowedAt - now;
+			}
+			long base = (arrival - now < 0) ? now : arrival;
+			if (bucket.compareAndSet(arrival, base + intervalNanos)) {
+				return 0;
+			}
+		}
+	}
+	
+	/**
+	 * @return number of tracked clients
+	 */
+	int getSize() {
+		return buckets.size();
+	}
+	
+	private AtomicLong bucketOf(String key, long now) {
+		AtomicLong bucket = buckets.get(key);
+		if (bucket != null) {
+			return bucket;
+		}
+		if (buckets.size() >= maxKeys) {
+			sweep(now);
+			if (buckets.size() >= maxKeys) {
+				return sharedBucket;
+			}
+		}
+		AtomicLong newBucket = new AtomicLong(now);
+		bucket = buckets.putIfAbsent(key, newBucket);
+		return (bucket == null) ? newBucket : bucket;
+	}
+	
+	/*
+	 * Drop buckets that have fully recovered. At most one thread sweeps, at most once per interval,
+	 * so a flood of new clients can not turn every request into a full scan.
+	 */
+	private void sweep(long now) {
+		long last = lastSweep.get();
+		if (now - last < SWEEP_INTERVAL_NANOS || !lastSweep.compareAndSet(last, now) || !sweeping.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			Iterator<AtomicLong> it = buckets.values().iterator();
+			while (it.hasNext()) {
+				if (it.next().get() - now <= 0) {
+					it.remove();
+				}
+			}
+		} finally {
+			sweeping.set(false);
+		}
+	}
+
+}
@@ -0,0 +1,27 @@
+package com.herodigital.wcm.internal.rest.service;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+
+/**
+ * Calls a single {@link SlingRestFunction} method on its {@link SlingRestService}.
+ * <p>
+ * Invokers are resolved once when the function is registered, so dispatching a request
+ * does not need to look up the java method again.
+ * 
+ * @author joelepps
+ *
+ */
+public interface RestFunctionInvoker {
+
+	/**
+	 * Invoke the REST function.
+	 * 
+	 * @param request request
+	 * @param response response
+	 * @return The value returned by the {@link SlingRestFunction} method
+	 * @throws Exception Any exception thrown by the {@link SlingRestFunction} method, unwrapped
+	 */
+	public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) throws Exception;
+
+}
@@ -1,21 +1,93 @@
 package com.herodigital.wcm.internal.rest.service;
 
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.herodigital.wcm.internal.rest.metrics.RouteMetrics;
+import com.herodigital.wcm.internal.rest.registry.HttpMethod;
+import com.herodigital.wcm.internal.rest.registry.PathSegment;
 import com.herodigital.wcm.internal.rest.registry.RestFunctionRegistry.ResolvedFunction;
 import com.herodigital.wcm.internal.rest.registry.RestOperation;
 
 public interface RestFunctionRegistryService {
 
 	public static class FunctionMeta {
+		
+		private static final String[] NO_HEADERS = new String[0];
 
 		private final SlingRestService heroWebService;
 		private final String javaMethod;
 		private final RestOperation operation; // convinience, not needed
+		private final RestFunctionInvoker invoker;
+		private final Type returnType;
+		private final String[] wildcardAttributeNames;
+		private final String routeKey;
+		private final long cacheTtlMillis;
+		private final String[] cacheVaryHeaders;
+		private final RateLimiter rateLimiter;
+		private final long coalesceWaitMillis;
+		private final RestJsonSerializer serializer;
+		private final RouteMetrics routeMetrics;
+
+		public FunctionMeta(SlingRestService heroWebService, String javaMethod, RestOperation operation, RestFunctionInvoker invoker) {
+			this(heroWebService, javaMethod, operation, invoker, Object.class);
+		}
+
+		public FunctionMeta(SlingRestService heroWebService, String javaMethod, RestOperation operation, RestFunctionInvoker invoker, Type returnType) {
+			this(heroWebService, javaMethod, operation, invoker, returnType, null);
+		}
+
+		/**
+		 * @param annotation Annotation of the method. Its options are read once here. May be null to use the defaults.
+		 */
+		public FunctionMeta(SlingRestService heroWebService, String javaMethod, RestOperation operation, RestFunctionInvoker invoker, Type returnType, SlingRestFunction annotation) {
+			this(heroWebService, javaMethod, operation, invoker, returnType, annotation, new RestJsonSerializer());
+		}
+
+		/**
+		 * @param annotation Annotation of the method. Its options are read once here. May be null to use the defaults.
+		 * @param serializer serializer of the functions of {@code heroWebService}
+		 */
+		public FunctionMeta(SlingRestService heroWebService, String javaMethod, RestOperation operation, RestFunctionInvoker invoker, Type returnType, 
+				SlingRestFunction annotation, RestJsonSerializer serializer) {
+			this(heroWebService, javaMethod, operation, invoker, returnType, annotation, serializer, new RouteMetrics(operation.toString()));
+		}
 
-		public FunctionMeta(SlingRestService heroWebService, String javaMethod, RestOperation operation) {
+		/**
+		 * @param annotation Annotation of the method. Its options are read once here. May be null to use the defaults.
+		 * @param serializer serializer of the functions of {@code heroWebService}
+		 * @param routeMetrics metrics of {@code operation}, see {@link RestMetricsService#getRouteMetrics(String)}
+		 */
+		public FunctionMeta(SlingRestService heroWebService, String javaMethod, RestOperation operation, RestFunctionInvoker invoker, Type returnType, 
+				SlingRestFunction annotation, RestJsonSerializer serializer, RouteMetrics routeMetrics) {
 			super();
 			this.heroWebService = heroWebService;
 			this.javaMethod = javaMethod;
 			this.operation = operation;
+			this.invoker = invoker;
+			this.returnType = returnType;
+			this.wildcardAttributeNames = toWildcardAttributeNames(operation);
+			this.routeKey = operation.toString();
+			this.cacheTtlMillis = (annotation == null || operation.getMethod() != HttpMethod.GET) ? 0 : TimeUnit.SECONDS.toMillis(annotation.cacheTtl());
+			this.cacheVaryHeaders = (annotation == null) ? NO_HEADERS : annotation.cacheVaryHeaders();
+			this.rateLimiter = (annotation == null || annotation.rateLimit() <= 0) ? null 
+					: new RateLimiter(annotation.rateLimit(), annotation.rateLimitBurst(), annotation.rateLimitBy());
+			this.coalesceWaitMillis = (annotation == null || operation.getMethod() != HttpMethod.GET) ? 0 : annotation.coalesceWait();
+			this.serializer = serializer;
+			this.routeMetrics = routeMetrics;
+		}
+		
+		private static String[] toWildcardAttributeNames(RestOperation operation) {
+			List<String> names = new ArrayList<>();
+			for (PathSegment segment : operation.getPathSegments()) {
+				if (segment.isWildCard()) {
+					names.add((SlingRestService.WILDCARD_ATTRIBUTE_PREFIX + segment.getWildcardName()).intern());
+				}
+			}
+			return names.toArray(new String[names.size()]);
 		}
 
 		public SlingRestService getSlingRestService() {
@@ -30,8 +102,112 @@ public interface RestFunctionRegistryService {
 			return operation;
 		}
 
+		/**
+		 * @return registered operation as a string, example: GET:/api/user/{id}. Identifies the route in metrics.
+		 */
+		public String getRouteKey() {
+			return routeKey;
+		}
+
+		/**
+		 * Resolved when the function is registered, so requests do not look it up.
+		 * 
+		 * @return metrics of the route
+		 */
+		public RouteMetrics getRouteMetrics() {
+			return routeMetrics;
+		}
+
+		/**
+		 * Pre-resolved invoker for {@link #getJavaMethod()} bound to {@link #getSlingRestService()}.
+		 * 
+		 * @return invoker
+		 */
+		public RestFunctionInvoker getInvoker() {
+			return invoker;
+		}
+
+		/**
+		 * Generic return type of {@link #getJavaMethod()}. Used to serialize returned objects.
+		 * 
+		 * @return type
+		 */
+		public Type getReturnType() {
+			return returnType;
+		}
+
+		/**
+		 * @return serializer of returned objects, shared by the functions of {@link #getSlingRestService()}
+		 */
+		public RestJsonSerializer getSerializer() {
+			return serializer;
+		}
+
+		/**
+		 * Request attribute names of the wildcards of {@link #getOperation()} in path order, 
+		 * matching the indexes of {@link ResolvedFunction#getWildcardValue(int)}. Example: {@code ws.id}.
+		 * 
+		 * @return attribute names, do not modify
+		 */
+		public String[] getWildcardAttributeNames() {
+			return wildcardAttributeNames;
+		}
+
+		/**
+		 * @return milliseconds responses may be cached, 0 if not cacheable
+		 * @see SlingRestFunction#cacheTtl()
+		 */
+		public long getCacheTtlMillis() {
+			return cacheTtlMillis;
+		}
+
+		/**
+		 * @return header names that are part of the cache key, do not modify
+		 * @see SlingRestFunction#cacheVaryHeaders()
+		 */
+		public String[] getCacheVaryHeaders() {
+			return cacheVaryHeaders;
+		}
+
+		/**
+		 * @return rate limit or null if unlimited
+		 * @see SlingRestFunction#rateLimit()
+		 */
+		public RateLimiter getRateLimiter() {
+			return rateLimiter;
+		}
+
+		/**
+		 * @return milliseconds to wait for an identical in-flight request, 0 if requests are not coalesced
+		 * @see SlingRestFunction#coalesceWait()
+		 */
+		public long getCoalesceWaitMillis() {
+			return coalesceWaitMillis;
+		}
+
 	}
 
 	public ResolvedFunction<FunctionMeta> getFunction(RestOperation restOperation);
 
+	/**
+	 * Same as {@link #getFunction(RestOperation)} without requiring a {@link RestOperation} per lookup.
+	 * 
+	 * @param method HTTP method
+	 * @param path request path
+	 * @return resolved function or null
+	 */
+	public ResolvedFunction<FunctionMeta> getFunction(HttpMethod method, CharSequence path);
+
+	/**
+	 * @param path request path
+	 * @return HTTP methods with a function registered for {@code path}, empty if none
+	 */
+	public Set<HttpMethod> getAllowedMethods(CharSequence path);
+
+	/**
+	 * @return number that changes whenever a rebuilt registry is published, so {@link FunctionMeta} instances 
+	 * may have been removed
+	 */
+	public long getGeneration();
+
 }
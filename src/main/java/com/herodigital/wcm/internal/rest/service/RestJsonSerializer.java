@@ -0,0 +1,73 @@
+package com.herodigital.wcm.internal.rest.service;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Type;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * JSON serializer for objects returned by the {@link SlingRestFunction} methods of one {@link SlingRestService}.
+ * <p>
+ * Each registered service gets its own instance, shared by all of its functions and requests. {@code Gson} is 
+ * thread safe and caches the type adapter of every type it has serialized, so the reflective adapter setup happens 
+ * once per type rather than once per request. Adapters of declared return types are created ahead of time 
+ * when functions are registered, see {@link #warm(Type)}. The adapters reference classes of the service bundle, 
+ * so the instance is dropped together with the functions of the service when it is removed.
+ * 
+ * @author joelepps
+ *
+ */
+public final class RestJsonSerializer {
+	
+	private final Gson gson = new GsonBuilder().create();
+	
+	/**
+	 * @return Gson instance of this serializer
+	 */
+	public Gson getGson() {
+		return gson;
+	}
+	
+	/**
+	 * Creates and caches the type adapter for {@code type} so the first request does not pay for it.
+	 * 
+	 * @param type type to prepare
+	 * @throws IllegalArgumentException if Gson can not serialize {@code type}
+	 */
+	public void warm(Type type) {
+		gson.getAdapter(TypeToken.get(type));
+	}
+	
+	/**
+	 * Streamed response body that serializes {@code entity} directly into the response.
+	 * 
+	 * @param entity object to serialize
+	 * @param declaredType Declared type of {@code entity}, example: the generic return type of the function. 
+	 * Only used if it is a parameterized type, otherwise the runtime class of {@code entity} is used.
+	 * @return body writer
+	 */
+	public RestResponse.BodyWriter bodyWriter(final Object entity, Type declaredType) {
+		final Type type = (declaredType == null || declaredType instanceof Class) ? entity.getClass() : declaredType;
+		return new RestResponse.BodyWriter() {
+			@Override
+			public void writeTo(Writer writer) throws IOException {
+				gson.toJson(entity, type, writer);
+			}
+		};
+	}
+	
+	/**
+	 * Default (200) response for {@code entity}.
+	 * 
+	 * @param entity object to serialize
+	 * @param declaredType see {@link #bodyWriter(Object, Type)}
+	 * @return response
+	 */
+	public RestResponse toRestResponse(Object entity, Type declaredType) {
+		return new RestResponse.Builder(bodyWriter(entity, declaredType)).create();
+	}
+
+}
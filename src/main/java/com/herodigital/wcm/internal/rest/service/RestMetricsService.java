@@ -0,0 +1,26 @@
+package com.herodigital.wcm.internal.rest.service;
+
+import java.util.Collection;
+
+import com.herodigital.wcm.internal.rest.metrics.RouteMetrics;
+
+/**
+ * Holds the {@link RouteMetrics} of every route that has been registered. 
+ * 
+ * @author joelepps
+ *
+ */
+public interface RestMetricsService {
+	
+	/**
+	 * @param route registered operation, see {@link RestFunctionRegistryService.FunctionMeta#getRouteKey()}
+	 * @return metrics of the route, created on first use
+	 */
+	public RouteMetrics getRouteMetrics(String route);
+	
+	/**
+	 * @return metrics of all routes registered so far
+	 */
+	public Collection<RouteMetrics> getAllRouteMetrics();
+
+}
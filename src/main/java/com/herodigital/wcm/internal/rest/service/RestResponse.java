@@ -1,7 +1,23 @@
 package com.herodigital.wcm.internal.rest.service;
 
+import java.io.IOException;
+import java.io.Writer;
+
 /**
  * Holds the result and metadata for a completed REST function invocation. 
+ * <p>
+ * The body is either a JSON string or a {@link BodyWriter} which streams the body directly to the 
+ * client once status and headers have been set. Streaming keeps large payloads from being held in
+ * memory as a single string:
+ * <pre>
+ * return new RestResponse.Builder(new RestResponse.BodyWriter() {
+ *     public void writeTo(Writer writer) throws IOException {
+ *         gson.toJson(assets, writer);
+ *     }
+ * }).create();
+ * </pre>
+ * A version token set with {@link Builder#setETag(String)} is sent as the ETag of a GET response. If the client 
+ * already has that version the framework answers 304 Not Modified and the {@link BodyWriter} is never called.
  * 
  * @author joelepps
  *
@@ -12,26 +28,55 @@ public class RestResponse {
 	public static final String CHARACTER_SET_DEFAULT = "utf-8";
 	public static final String CONTENT_TYPE_DEFAULT = "application/json";
 
+	/**
+	 * Writes a response body. Called by the framework after status and headers have been set, 
+	 * so anything written goes straight to the client.
+	 */
+	public interface BodyWriter {
+		
+		/**
+		 * @param writer Buffered writer on the response output stream using the response character set. 
+		 * Does not need to be flushed or closed.
+		 * @throws IOException 
+		 */
+		public void writeTo(Writer writer) throws IOException;
+		
+	}
+
 	private final int httpStatus;
 	private final String json;
+	private final BodyWriter bodyWriter;
 	private final String charSet;
 	private final String contentType;
+	private final String eTag;
 
-	private RestResponse(int httpStatus, String json, String charSet, String contentType) {
+	private RestResponse(int httpStatus, String json, BodyWriter bodyWriter, String charSet, String contentType, String eTag) {
 		this.httpStatus = httpStatus;
 		this.json = json;
+		this.bodyWriter = bodyWriter;
 		this.charSet = charSet;
 		this.contentType = contentType;
+		this.eTag = eTag;
 	}
 
 	public int getHttpStatus() {
 		return httpStatus;
 	}
 
+	/**
+	 * @return JSON body or null if this response is streamed by {@link #getBodyWriter()}
+	 */
 	public String getJson() {
 		return json;
 	}
 	
+	/**
+	 * @return Streaming body writer or null if the body is {@link #getJson()}
+	 */
+	public BodyWriter getBodyWriter() {
+		return bodyWriter;
+	}
+	
 	public String getCharSet() {
 		return charSet;
 	}
@@ -39,13 +84,22 @@ public class RestResponse {
 	public String getContentType() {
 		return contentType;
 	}
+	
+	/**
+	 * @return version token of the body or null if the framework should compute one
+	 */
+	public String getETag() {
+		return eTag;
+	}
 
 	public static class Builder {
 
 		private int httpStatus;
 		private String json;
+		private BodyWriter bodyWriter;
 		private String charSet;
 		private String contentType;
+		private String eTag;
 
 		public Builder(String json) {
 			this.httpStatus = HTTP_STATUS_DEFAULT;
@@ -53,6 +107,16 @@ public class RestResponse {
 			this.charSet = CHARACTER_SET_DEFAULT;
 			this.contentType = CONTENT_TYPE_DEFAULT;
 		}
+		
+		/**
+		 * Builder for a streamed response.
+		 * 
+		 * @param bodyWriter writes the body
+		 */
+		public Builder(BodyWriter bodyWriter) {
+			this((String) null);
+			this.bodyWriter = bodyWriter;
+		}
 
 		/**
 		 * Default is {@link RestResponse#HTTP_STATUS_DEFAULT}
@@ -65,8 +129,27 @@ public class RestResponse {
 			return this;
 		}
 
+		/**
+		 * Replaces any {@link BodyWriter}.
+		 * 
+		 * @param json
+		 * @return
+		 */
 		public Builder setJson(String json) {
 			this.json = json;
+			this.bodyWriter = null;
+			return this;
+		}
+		
+		/**
+		 * Replaces any JSON string.
+		 * 
+		 * @param bodyWriter
+		 * @return
+		 */
+		public Builder setBodyWriter(BodyWriter bodyWriter) {
+			this.bodyWriter = bodyWriter;
+			this.json = null;
 			return this;
 		}
 
@@ -88,8 +171,23 @@ public class RestResponse {
 			this.contentType = contentType;
 		}
 
+		/**
+		 * Version token of the body, example: last modified time or revision of the underlying content. 
+		 * Must change whenever the body changes. Quotes are added if missing.
+		 * <p>
+		 * Default is null, the framework computes a hash of the body if it is a JSON string. 
+		 * Streamed bodies have no ETag unless one is set.
+		 * 
+		 * @param eTag
+		 * @return
+		 */
+		public Builder setETag(String eTag) {
+			this.eTag = eTag;
+			return this;
+		}
+
 		public RestResponse create() {
-			return new RestResponse(httpStatus, json, charSet, contentType);
+			return new RestResponse(httpStatus, json, bodyWriter, charSet, contentType, eTag);
 		}
 
 	}
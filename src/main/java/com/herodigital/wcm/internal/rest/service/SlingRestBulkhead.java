@@ -0,0 +1,55 @@
+package com.herodigital.wcm.internal.rest.service;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits the concurrent invocations of {@link SlingRestFunction} methods, so that one slow backend can not 
+ * tie up all request threads.
+ * <p>
+ * Placed on a {@link SlingRestService} class, all functions of the service share one limit. Placed on a 
+ * method, the function gets its own limit and ignores the one of the class.
+ * <p>
+ * Requests over the limit wait up to {@link #maxWait()} if fewer than {@link #maxQueued()} requests are waiting, 
+ * otherwise they fail with a 503 {@link SlingRestServiceException}.
+ * <p>
+ * Example:
+ * <pre>
+ * &#64;SlingRestBulkhead(maxConcurrent = 10, maxQueued = 20, maxWait = 500, timeout = 5000)
+ * </pre>
+ * 
+ * @author joelepps
+ *
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SlingRestBulkhead {
+
+	/**
+	 * Maximum concurrent invocations. Default is 0, unlimited.
+	 */
+	int maxConcurrent() default 0;
+	
+	/**
+	 * Maximum requests waiting for an invocation slot. Default is 0, fail as soon as the limit is reached.
+	 */
+	int maxQueued() default 0;
+	
+	/**
+	 * Milliseconds a request waits for an invocation slot.
+	 */
+	long maxWait() default 0;
+	
+	/**
+	 * Milliseconds from the arrival of a request until its invocation should be done. Default is 0, no timeout.
+	 * <p>
+	 * The timeout also bounds the wait for an invocation slot. Requests whose deadline passes before the method 
+	 * is invoked fail with a 504 {@link SlingRestServiceException}. The method always runs on the request thread 
+	 * and is never interrupted; it finds the deadline in the {@link SlingRestService#DEADLINE_ATTRIBUTE} request 
+	 * attribute and is expected to bound its backend calls with it.
+	 */
+	long timeout() default 0;
+	
+}
@@ -20,7 +20,17 @@ import org.apache.sling.api.SlingHttpServletRequest;
  * <li>POST:/api/user/register
  * <li>GET:/api/user/{userId}
  * <li>GET:/api/{group}/attribute/{attributeId}
+ * <li>GET:/api/order/{orderId:long}
  * </ul>
+ * <p>
+ * GET responses can be cached by setting {@link #cacheTtl()}. Cached responses are served without invoking the method. 
+ * The cache key is made of the function, the wildcard values, the query string, the values of the {@link #cacheVaryHeaders()} 
+ * and the user ID of the resource resolver.
+ * <p>
+ * Requests can be limited with {@link #rateLimit()}. Requests over the limit are answered with 429 Too Many Requests 
+ * and a Retry-After header without invoking the method.
+ * <p>
+ * Concurrent identical GET requests can share one invocation by setting {@link #coalesceWait()}.
  * 
  * @author joelepps
  *
@@ -31,4 +41,45 @@ public @interface SlingRestFunction {
 
 	String[] value();
 	
+	/**
+	 * Seconds a successful GET response is kept in the response cache. Default is 0, not cached.
+	 * <p>
+	 * Only status, content type and body are cached. Headers the method sets on the response itself, such as 
+	 * Cache-Control, Set-Cookie or Location, are not sent with cached responses.
+	 */
+	long cacheTtl() default 0;
+	
+	/**
+	 * Request headers whose values are part of the cache key, example: Accept-Language. 
+	 * Only used if {@link #cacheTtl()} or {@link #coalesceWait()} is set.
+	 */
+	String[] cacheVaryHeaders() default {};
+	
+	/**
+	 * Milliseconds a GET request waits for an identical request that is already being handled, instead of invoking 
+	 * the method itself. Identical means the same key as the response cache. Default is 0, every request invokes the method.
+	 * <p>
+	 * Waiters of the same user get the same status, content type and body as the first request, but not the headers 
+	 * it set itself. If it fails, answers with a status other than 2xx or is not done in time, they invoke the method 
+	 * themselves.
+	 */
+	long coalesceWait() default 0;
+	
+	/**
+	 * Sustained requests per second. Default is 0, unlimited.
+	 */
+	double rateLimit() default 0;
+	
+	/**
+	 * Requests allowed at once on top of the sustained rate. Default is 0, one request.
+	 */
+	int rateLimitBurst() default 0;
+	
+	/**
+	 * What the limit applies to. Default is empty, one limit shared by all clients. {@link RateLimiter#BY_CLIENT_IP} 
+	 * limits each remote address. Any other value is a request header whose values are limited separately, 
+	 * example: X-Forwarded-For or X-Api-Key.
+	 */
+	String rateLimitBy() default "";
+	
 }
@@ -0,0 +1,98 @@
+package com.herodigital.wcm.internal.rest.service;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+import com.google.gson.internal.$Gson$Types;
+
+/**
+ * Route index of a {@link SlingRestService} class, generated at build time by the annotation processor of this
+ * bundle. Lists the {@link SlingRestFunction} methods of the class with invokers that call them directly,
+ * so functions are registered without scanning the class.
+ * <p>
+ * The index of class {@code com.example.UserService} is {@code com.example.UserService_SlingRestRoutes}.
+ * Services without an index are scanned by reflection.
+ * <p>
+ * Implementations are generated, do not implement this interface by hand.
+ *
+ * @author joelepps
+ *
+ */
+public interface SlingRestRouteIndex {
+
+	/**
+	 * Appended to the binary name of the service class to get the name of its index.
+	 */
+	public static final String CLASS_SUFFIX = "_SlingRestRoutes";
+
+	/**
+	 * @return bulkhead of the service class, null if none
+	 */
+	public SlingRestBulkhead getBulkhead();
+
+	/**
+	 * @param service Instance of the indexed class
+	 * @return functions of {@code service} in declaration order
+	 */
+	public List<Route> getRoutes(SlingRestService service);
+
+	/**
+	 * A single {@link SlingRestFunction} method.
+	 */
+	public static final class Route {
+
+		private final String javaMethod;
+		private final RestFunctionInvoker invoker;
+		private final Type returnType;
+		private final SlingRestFunction function;
+		private final SlingRestBulkhead bulkhead;
+
+		/**
+		 * @param javaMethod method name
+		 * @param invoker invoker bound to the service
+		 * @param returnType generic return type of the method
+		 * @param function annotation of the method
+		 * @param bulkhead bulkhead of the method, null if none
+		 */
+		public Route(String javaMethod, RestFunctionInvoker invoker, Type returnType, SlingRestFunction function, SlingRestBulkhead bulkhead) {
+			this.javaMethod = javaMethod;
+			this.invoker = invoker;
+			this.returnType = returnType;
+			this.function = function;
+			this.bulkhead = bulkhead;
+		}
+
+		public String getJavaMethod() {
+			return javaMethod;
+		}
+
+		public RestFunctionInvoker getInvoker() {
+			return invoker;
+		}
+
+		public Type getReturnType() {
+			return returnType;
+		}
+
+		public SlingRestFunction getFunction() {
+			return function;
+		}
+
+		public SlingRestBulkhead getBulkhead() {
+			return bulkhead;
+		}
+
+		/**
+		 * Parameterized return type, example: {@code parameterized(List.class, Role.class)} for {@code List<Role>}.
+		 *
+		 * @param rawType raw type
+		 * @param typeArguments type arguments
+		 * @return type
+		 */
+		public static Type parameterized(Class<?> rawType, Type... typeArguments) {
+			return $Gson$Types.newParameterizedTypeWithOwner(rawType.getEnclosingClass(), rawType, typeArguments);
+		}
+
+	}
+
+}
@@ -13,7 +13,8 @@ import com.herodigital.wcm.internal.rest.servlet.SlingRestServiceServlet;
  * <li>A REST function may take any action whatsoever.
  * <li>A method is registered as a REST function with the {@link SlingRestFunction} annotation.
  * <li>Every registered method must have a parameter signature of ({@link SlingHttpServletRequest}, {@link SlingHttpServletResponse}).
- * <li>Every registered method must return a populated {@link RestResponse} object.
+ * <li>Every registered method should return a populated {@link RestResponse} object. Any other returned object
+ * is serialized to JSON by {@link RestJsonSerializer} and sent with status 200.
  * <li>If the method encounters an error, it must throw a {@link SlingRestServiceException}.
  * </ul>
  *
@@ -68,10 +69,36 @@ import com.herodigital.wcm.internal.rest.servlet.SlingRestServiceServlet;
  * if the API call were {@code /api/v1/user/123.ws.json}, then the request attribute 'ws.id' will be set to 123 prior to forwarding on to 
  * the {@code userInfo} method. All wildcard attributes are prefixed with 'ws.'.
  * <p>
+ * A wildcard can be typed, for instance {@code {id:long}}, {@code {id:uuid}} or a regular expression such as {@code {code:[A-Z]{3}}}. 
+ * Paths whose segment is not a valid value of the type do not match. The attribute is the converted value, a {@link Long} for 
+ * {@code long}, see {@link com.herodigital.wcm.internal.rest.registry.WildcardType}.
+ * <p>
+ * A wildcard named with a trailing asterisk, for instance {@code /api/v1/tree/{path*}}, matches the rest of the path. 
+ * For {@code /api/v1/tree/a/b/c.ws.json} the attribute 'ws.path' is set to {@code a/b/c}.
+ * <p>
+ * With this bundle on the compile classpath, functions are checked by the compiler and a {@link SlingRestRouteIndex} 
+ * is generated for the class, so the class does not need to be scanned when the service is registered.
+ * <p>
  * @author joelepps
  *
  * @see SlingRestServiceServlet
  */
 public interface SlingRestService {
+	
+	/**
+	 * Prefix of the request attributes holding wildcard values.
+	 */
+	public static final String WILDCARD_ATTRIBUTE_PREFIX = "ws.";
+	
+	/**
+	 * Request attribute holding the time the request reached the REST servlet, as a Long of epoch milliseconds.
+	 */
+	public static final String ARRIVAL_ATTRIBUTE = "sling-rest.arrival";
+	
+	/**
+	 * Request attribute holding the deadline of a function with a {@link SlingRestBulkhead#timeout()}, 
+	 * as a Long of epoch milliseconds.
+	 */
+	public static final String DEADLINE_ATTRIBUTE = "sling-rest.deadline";
 
 }
@@ -4,14 +4,16 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang3.StringUtils;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.annotations.Expose;
 
 /**
  * All web service methods should throw this exception when encountering a checked exception.
  * <p>
  * Use {@link Builder} to construct. 
+ * <p>
+ * Validation errors without a chained exception are lightweight by default: no stack trace is captured, 
+ * see {@link Builder#setStackTrace(boolean)}. A lightweight instance is immutable and may be kept in a 
+ * constant and thrown repeatedly, its JSON is then rendered only once.
  * 
  * @author joelepps
  *
@@ -20,10 +22,14 @@ public class SlingRestServiceException extends Exception {
 	
 	public static final String CATEGORY_ERROR = "error";
 	public static final String CATEGORY_VALIDATION = "validation";
+	/**
+	 * Request was rejected before or while invoking the function because of overload, example: a full {@link SlingRestBulkhead}.
+	 */
+	public static final String CATEGORY_UNAVAILABLE = "unavailable";
 
 	private static final long serialVersionUID = 1417470012775654514L;
 
-	private static final Gson GSON = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
 
 	@Expose
 	private final String errorCategory;
@@ -36,9 +42,11 @@ public class SlingRestServiceException extends Exception {
 	private final String internalMessage;
 	private final Exception exception;
 	private final int httpStatusCode;
+	private transient volatile String json;
 
 	private SlingRestServiceException(Builder b) {
-		super( b.getHttpStatusCode() + ": " + ((StringUtils.isBlank(b.getInternalMessage())) ? b.getMessage() : b.getInternalMessage()), b.getException());
+		super( b.getHttpStatusCode() + ": " + ((StringUtils.isBlank(b.getInternalMessage())) ? b.getMessage() : b.getInternalMessage()), b.getException(), 
+				b.isStackTrace(), b.isStackTrace());
 		this.errorCategory = b.getErrorCategory();
 		this.errorCode = b.getErrorCode();
 		this.errorMessage = b.getMessage();
@@ -115,11 +123,68 @@ public class SlingRestServiceException extends Exception {
 	
 	/**
 	 * JSON representation suitable for public consumption. Some fields are excluded.
+	 * <p>
+	 * Rendered by hand on first use, same output as Gson for the {@link Expose} fields.
 	 * 
 	 * @return
 	 */
 	public String toJson() {
-		return GSON.toJson(this);
+		String result = json;
+		if (result == null) {
+			StringBuilder sb = new StringBuilder(96 + errorMessage.length());
+			sb.append('{');
+			appendField(sb, "errorCategory", errorCategory);
+			appendField(sb, "errorCode", errorCode);
+			appendField(sb, "errorMessage", errorMessage);
+			appendField(sb, "redirect", redirect);
+			sb.append('}');
+			json = result = sb.toString();
+		}
+		return result;
+	}
+	
+	private static void appendField(StringBuilder sb, String name, String value) {
+		if (value == null) {
+			return;
+		}
+		if (sb.length() > 1) {
+			sb.append(',');
+		}
+		sb.append('"').append(name).append("\":");
+		appendString(sb, value);
+	}
+	
+	/*
+	 * Same escaping as Gson's default HTML safe JsonWriter
+	 */
+	private static void appendString(StringBuilder sb, String value) {
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"': sb.append("\\\""); break;
+			case '\\': sb.append("\\\\"); break;
+			case '\t': sb.append("\\t"); break;
+			case '\b': sb.append("\\b"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\f': sb.append("\\f"); break;
+			case '<': case '>': case '&': case '=': case '\'': case '\u2028': case '\u2029':
+				appendUnicode(sb, c);
+				break;
+			default:
+				if (c < 0x20) {
+					appendUnicode(sb, c);
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		sb.append('"');
+	}
+	
+	private static void appendUnicode(StringBuilder sb, char c) {
+		sb.append("\\u").append(HEX[(c >> 12) & 0xf]).append(HEX[(c >> 8) & 0xf]).append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
 	}
 	
 	public RestResponse toRestResponse() {
@@ -137,6 +202,7 @@ public class SlingRestServiceException extends Exception {
 		private String internalMessage;
 		private Exception exception;
 		private int httpStatusCode;
+		private Boolean stackTrace;
 		
 		public Builder(String errorCategory, String message) {
 			this.errorCategory = errorCategory;
@@ -218,6 +284,27 @@ public class SlingRestServiceException extends Exception {
 			return httpStatusCode;
 		}
 
+		public boolean isStackTrace() {
+			if (stackTrace != null) {
+				return stackTrace;
+			}
+			return !CATEGORY_VALIDATION.equals(getErrorCategory()) || exception != null;
+		}
+
+		/**
+		 * Whether the stack trace is captured. Capturing it is the most expensive part of creating an exception, 
+		 * turn it off for expected errors whose origin is not of interest.
+		 * <p>
+		 * If not set, validation errors without a chained exception have no stack trace and all others have one.
+		 * 
+		 * @param stackTrace
+		 * @return
+		 */
+		public Builder setStackTrace(boolean stackTrace) {
+			this.stackTrace = stackTrace;
+			return this;
+		}
+
 		/**
 		 * If not set and {@code category} is {@link SlingRestServiceException#CATEGORY_VALIDATION} then default to 400 (bad request).
 		 * <p>
@@ -0,0 +1,80 @@
+package com.herodigital.wcm.internal.rest.service.impl;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletResponse;
+
+import com.herodigital.wcm.internal.rest.service.SlingRestBulkhead;
+import com.herodigital.wcm.internal.rest.service.SlingRestServiceException;
+
+/**
+ * Concurrency limit with a bounded number of waiters, see {@link SlingRestBulkhead}.
+ * 
+ * @author joelepps
+ *
+ */
+class Bulkhead {
+	
+	private final String name;
+	private final Semaphore permits;
+	private final int maxQueued;
+	private final long maxWaitMillis;
+	private final AtomicInteger queued = new AtomicInteger();
+	
+	Bulkhead(String name, int maxConcurrent, int maxQueued, long maxWaitMillis) {
+		this.name = name;
+		this.permits = new Semaphore(maxConcurrent);
+		this.maxQueued = maxQueued;
+		this.maxWaitMillis = maxWaitMillis;
+	}
+	
+	/**
+	 * Take an invocation slot. Must be followed by {@link #release()}.
+	 * 
+	 * @param waitBoundMillis further bound of the wait, e.g. the time left until a deadline
+	 * @throws SlingRestServiceException 503 if no slot became available
+	 */
+	void acquire(long waitBoundMillis) throws SlingRestServiceException {
+		if (permits.tryAcquire()) {
+			return;
+		}
+		long waitMillis = Math.min(maxWaitMillis, waitBoundMillis);
+		if (waitMillis <= 0 || maxQueued <= 0) {
+			throw busy();
+		}
+		if (queued.incrementAndGet() > maxQueued) {
+			queued.decrementAndGet();
+			throw busy();
+		}
+		try {
+			if (!permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+				throw busy();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw busy();
+		} finally {
+			queued.decrementAndGet();
+		}
+	}
+	
+	void release() {
+		permits.release();
+	}
+	
+	private SlingRestServiceException busy() {
+		return new SlingRestServiceException.Builder(SlingRestServiceException.CATEGORY_UNAVAILABLE, "Service is busy, please try again later.")
+				.setHttpStatusCode(HttpServletResponse.SC_SERVICE_UNAVAILABLE)
+				.setInternalMessage("Bulkhead of " + name + " is full")
+				.setStackTrace(false)
+				.create();
+	}
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
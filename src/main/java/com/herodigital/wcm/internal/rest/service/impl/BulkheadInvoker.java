@@ -0,0 +1,86 @@
+package com.herodigital.wcm.internal.rest.service.impl;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+
+import com.herodigital.wcm.internal.rest.service.RestFunctionInvoker;
+import com.herodigital.wcm.internal.rest.service.SlingRestBulkhead;
+import com.herodigital.wcm.internal.rest.service.SlingRestService;
+import com.herodigital.wcm.internal.rest.service.SlingRestServiceException;
+
+/**
+ * Applies a {@link SlingRestBulkhead} to an invoker.
+ * <p>
+ * The invocation runs on the request thread, since it uses the request, response and resource resolver, 
+ * which must not be used by other threads. The invocation slot is held until the invocation ends. With a 
+ * timeout the deadline counts from the {@link SlingRestService#ARRIVAL_ATTRIBUTE} of the request, bounds 
+ * the wait for a slot and is set as the {@link SlingRestService#DEADLINE_ATTRIBUTE} request attribute, 
+ * for the function to bound its own backend calls. Requests whose deadline has passed before the 
+ * invocation fail with a 504.
+ * 
+ * @author joelepps
+ *
+ */
+class BulkheadInvoker implements RestFunctionInvoker {
+	
+	private final RestFunctionInvoker delegate;
+	private final Bulkhead bulkhead;
+	private final long timeoutMillis;
+	
+	/**
+	 * @param delegate invoker to limit
+	 * @param bulkhead concurrency limit or null
+	 * @param timeoutMillis invocation deadline, 0 for none
+	 */
+	BulkheadInvoker(RestFunctionInvoker delegate, Bulkhead bulkhead, long timeoutMillis) {
+		this.delegate = delegate;
+		this.bulkhead = bulkhead;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	@Override
+	public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) throws Exception {
+		long deadline = 0;
+		if (timeoutMillis > 0) {
+			deadline = getArrival(request) + timeoutMillis;
+			request.setAttribute(SlingRestService.DEADLINE_ATTRIBUTE, deadline);
+		}
+		if (bulkhead == null) {
+			checkDeadline(deadline);
+			return delegate.invoke(request, response);
+		}
+		try {
+			bulkhead.acquire((deadline == 0) ? Long.MAX_VALUE : deadline - System.currentTimeMillis());
+		} catch (SlingRestServiceException e) {
+			checkDeadline(deadline); // the wait ended at the deadline
+			throw e;
+		}
+		try {
+			checkDeadline(deadline);
+			return delegate.invoke(request, response);
+		} finally {
+			bulkhead.release();
+		}
+	}
+	
+	/*
+	 * Cache lookups, rate limits and the slot wait count towards the deadline. Falls back to now outside of the servlet.
+	 */
+	private static long getArrival(SlingHttpServletRequest request) {
+		Object arrival = request.getAttribute(SlingRestService.ARRIVAL_ATTRIBUTE);
+		return (arrival instanceof Long) ? (Long) arrival : System.currentTimeMillis();
+	}
+	
+	private static void checkDeadline(long deadline) throws SlingRestServiceException {
+		if (deadline != 0 && System.currentTimeMillis() >= deadline) {
+			throw new SlingRestServiceException.Builder(SlingRestServiceException.CATEGORY_UNAVAILABLE, "Service timed out, please try again later.")
+					.setHttpStatusCode(HttpServletResponse.SC_GATEWAY_TIMEOUT)
+					.setInternalMessage("Deadline passed before the invocation")
+					.setStackTrace(false)
+					.create();
+		}
+	}
+
+}
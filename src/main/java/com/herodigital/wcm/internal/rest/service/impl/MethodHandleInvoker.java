@@ -0,0 +1,66 @@
+package com.herodigital.wcm.internal.rest.service.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+
+import com.herodigital.wcm.internal.rest.service.RestFunctionInvoker;
+import com.herodigital.wcm.internal.rest.service.SlingRestService;
+
+/**
+ * {@link RestFunctionInvoker} backed by a {@link MethodHandle} which is bound to the service 
+ * instance and adapted to a fixed {@code (request, response) -> Object} type at creation time.
+ * 
+ * @author joelepps
+ *
+ */
+class MethodHandleInvoker implements RestFunctionInvoker {
+
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, SlingHttpServletRequest.class, SlingHttpServletResponse.class);
+
+	private final MethodHandle handle;
+	private final String description;
+
+	private MethodHandleInvoker(MethodHandle handle, String description) {
+		this.handle = handle;
+		this.description = description;
+	}
+
+	/**
+	 * Resolve an invoker for {@code method} bound to {@code service}.
+	 * 
+	 * @param service Service instance the method is invoked on
+	 * @param method Public method with a parameter signature of ({@link SlingHttpServletRequest}, {@link SlingHttpServletResponse})
+	 * @return invoker
+	 * @throws IllegalAccessException if the method is not accessible
+	 */
+	static MethodHandleInvoker create(SlingRestService service, Method method) throws IllegalAccessException {
+		MethodHandle handle = MethodHandles.publicLookup()
+				.unreflect(method)
+				.bindTo(service)
+				.asType(INVOKER_TYPE);
+		return new MethodHandleInvoker(handle, service.getClass().getName() + "." + method.getName());
+	}
+
+	@Override
+	public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) throws Exception {
+		try {
+			return (Object) handle.invokeExact(request, response);
+		} catch (Exception | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			// only reachable for custom Throwable subclasses
+			throw new IllegalStateException("Unexpected throwable from " + description, t);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+
+}
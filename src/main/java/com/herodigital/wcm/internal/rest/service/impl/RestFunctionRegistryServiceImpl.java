@@ -1,15 +1,25 @@
 package com.herodigital.wcm.internal.rest.service.impl;
 
 import java.lang.reflect.Method;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Properties;
 import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.Filter;
@@ -17,14 +27,24 @@ import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.herodigital.wcm.internal.rest.registry.CachingRestFunctionRegistry;
+import com.herodigital.wcm.internal.rest.registry.HttpMethod;
 import com.herodigital.wcm.internal.rest.registry.RestFunctionRegistry;
 import com.herodigital.wcm.internal.rest.registry.RestFunctionRegistry.ResolvedFunction;
 import com.herodigital.wcm.internal.rest.registry.RestFunctionRegistryTrie;
 import com.herodigital.wcm.internal.rest.registry.RestOperation;
+import com.herodigital.wcm.internal.rest.service.RestFunctionInvoker;
+import com.herodigital.wcm.internal.rest.service.RestJsonSerializer;
+import com.herodigital.wcm.internal.rest.service.RestMetricsService;
+import com.herodigital.wcm.internal.rest.service.RestResponse;
+import com.herodigital.wcm.internal.rest.service.SlingRestBulkhead;
 import com.herodigital.wcm.internal.rest.service.SlingRestFunction;
+import com.herodigital.wcm.internal.rest.service.SlingRestRouteIndex;
+import com.herodigital.wcm.internal.rest.service.SlingRestRouteIndex.Route;
 import com.herodigital.wcm.internal.rest.service.SlingRestService;
 import com.herodigital.wcm.internal.rest.service.RestFunctionRegistryService;
 
@@ -34,99 +54,211 @@ import com.herodigital.wcm.internal.rest.service.RestFunctionRegistryService;
 @Properties({
 	@Property(name = "service.vendor", value = "Hero Digital"),
 	@Property(name = "service.description", value = "Maintains registry of all registered SlingRestService services"),
+	@Property(name = RestFunctionRegistryServiceImpl.PROPERTY_ROUTE_CACHE_SIZE, intValue = RestFunctionRegistryServiceImpl.DEFAULT_ROUTE_CACHE_SIZE),
 })
-public class RestFunctionRegistryServiceImpl implements RestFunctionRegistryService {
+public class RestFunctionRegistryServiceImpl implements RestFunctionRegistryService, ServiceTrackerCustomizer {
 	
 	private static final Logger log = LoggerFactory.getLogger(RestFunctionRegistryServiceImpl.class);
 	
+	static final String PROPERTY_ROUTE_CACHE_SIZE = "route.cache.size";
+	static final int DEFAULT_ROUTE_CACHE_SIZE = 4096;
+	
+	private static final Class<?>[] FUNCTION_PARAMETER_TYPES = new Class<?>[]{SlingHttpServletRequest.class, SlingHttpServletResponse.class};
+	
+	@Reference
+	private RestMetricsService metricsService;
+	
+	private BundleContext bundleContext;
+	
 	private ServiceTracker tracker;
 	
-	private volatile int _trackingCount;
+	/*
+	 * Maximum number of exact paths whose resolved function is remembered, 0 to always walk the registry.
+	 */
+	private int routeCacheSize;
+	
+	/*
+	 * Functions of each tracked service, scanned once when the service is added. Guarded by this.
+	 */
+	private final Map<ServiceReference, List<FunctionMeta>> functionsByService = new HashMap<>();
 	
-	private RestFunctionRegistry<FunctionMeta> registry;
+	/*
+	 * True while the tracker is opening or closing. Registry is published once afterwards 
+	 * instead of once per service. Guarded by this.
+	 */
+	private boolean batchUpdate;
+	
+	/*
+	 * Copy-on-write: a registry instance is immutable once published here. Updates construct 
+	 * a new registry and swap it in with a single volatile write, so readers never block and never 
+	 * observe a partially built registry. Resolved paths are cached by the published instance, so 
+	 * the swap also drops them.
+	 */
+	private volatile RestFunctionRegistry<FunctionMeta> registry;
+	
+	/*
+	 * Incremented with every published registry. Written under the lock on this.
+	 */
+	private volatile long generation;
 	
 	@Activate
 	public void activate(ComponentContext context) throws InvalidSyntaxException {
-		BundleContext bc = context.getBundleContext();
-		Filter filter = bc.createFilter("("+Constants.OBJECTCLASS + "=" + SlingRestService.class.getName()+")");
-		tracker = new ServiceTracker(bc, filter, null);
-		tracker.open();
+		bundleContext = context.getBundleContext();
+		routeCacheSize = PropertiesUtil.toInteger(context.getProperties().get(PROPERTY_ROUTE_CACHE_SIZE), DEFAULT_ROUTE_CACHE_SIZE);
+		registry = new RestFunctionRegistryTrie<FunctionMeta>().freeze(); // empty until tracker is open
 		
-		registry = new RestFunctionRegistryTrie<>();
+		Filter filter = bundleContext.createFilter("("+Constants.OBJECTCLASS + "=" + SlingRestService.class.getName()+")");
+		tracker = new ServiceTracker(bundleContext, filter, this);
 		
-		_trackingCount = -1;
-		rebuildRegistryIfNeeded();
+		synchronized (this) {
+			batchUpdate = true;
+		}
+		tracker.open();
+		synchronized (this) {
+			batchUpdate = false;
+			log.info("Found {} service matches", functionsByService.size());
+			publishRegistry();
+		}
 	}
 	
 	@Deactivate
 	public void deactivate() {
+		synchronized (this) {
+			batchUpdate = true;
+		}
 		tracker.close();
+		synchronized (this) {
+			functionsByService.clear();
+			registry = new RestFunctionRegistryTrie<FunctionMeta>().freeze();
+			generation++;
+		}
 	}
 
 	@Override
 	public ResolvedFunction<FunctionMeta> getFunction(RestOperation restOperation) {
-		rebuildRegistryIfNeeded();
 		return registry.getFunction(restOperation);
 	}
+
+	@Override
+	public ResolvedFunction<FunctionMeta> getFunction(HttpMethod method, CharSequence path) {
+		return registry.getFunction(method, path);
+	}
+
+	@Override
+	public Set<HttpMethod> getAllowedMethods(CharSequence path) {
+		return registry.getAllowedMethods(path);
+	}
+	
+	@Override
+	public long getGeneration() {
+		return generation;
+	}
 	
-	protected void rebuildRegistryIfNeeded() {
-		int actualCount = tracker.getTrackingCount();
+	@Override
+	public Object addingService(ServiceReference reference) {
+		SlingRestService heroWebService = (SlingRestService) bundleContext.getService(reference);
+		if (heroWebService == null) {
+			return null; // unregistered in the meantime, do not track
+		}
 		
-		// Cache the value of the volatile _trackingCount to minimize overhead
-		// incurred by accessing live value multiple times needlessly. (in theory)
-		int localTrackingCount = _trackingCount;
+		// load or reflect outside of the lock, only the added service is scanned
+		List<FunctionMeta> funcMetas = getFunctionMeta(heroWebService);
+		
+		synchronized (this) {
+			log.info("Adding {} functions of {}", funcMetas.size(), heroWebService.getClass().getName());
+			functionsByService.put(reference, funcMetas);
+			if (!batchUpdate) {
+				publishRegistry();
+			}
+		}
+		return heroWebService;
+	}
+
+	@Override
+	public void modifiedService(ServiceReference reference, Object service) {
+		// Functions are defined by annotations on the service class, so changed service 
+		// properties do not change the routes. Only a ranking change may change which 
+		// service wins a conflicting route.
+		synchronized (this) {
+			if (!batchUpdate) {
+				publishRegistry();
+			}
+		}
+	}
 
-		// double checked locking with volatile
-		if (localTrackingCount != actualCount) {
-			synchronized(this) {
-				localTrackingCount = _trackingCount;
-				if (localTrackingCount != actualCount) {
-					
-					log.info("Rebuilding REST Function Registry. Tracking count mismatch: cached = {}, actual = {}", localTrackingCount, actualCount);
-					
-					registry.clear();
-					
-					ServiceReference[] srs = tracker.getServiceReferences();
-					localTrackingCount = tracker.getTrackingCount();
-					if (srs == null) {
-						log.warn("No {} services have been registered", SlingRestService.class);
-						return;
-					}
-					
-					log.info("Found {} service matches", srs.length);
-					
-					for (ServiceReference sr : srs) {
-						SlingRestService heroWebService = (SlingRestService) tracker.getService(sr);
-						List<FunctionMeta> funcMetas = getFunctionMeta(heroWebService);
-						for (FunctionMeta funcMeta : funcMetas) {
-							log.info("Registering {} to {}.{}", new Object[]{funcMeta.getOperation(), heroWebService.getClass().getName(), funcMeta.getJavaMethod()});
-							registry.addFunction(funcMeta.getOperation(), funcMeta);
-						}
-					}
-					
-					// finally update shared _trackingCount
-					_trackingCount = localTrackingCount;
-				} else {
-					log.trace("trackingCounts match after double check, no refresh. {}={}", localTrackingCount, actualCount);
+	@Override
+	public void removedService(ServiceReference reference, Object service) {
+		synchronized (this) {
+			List<FunctionMeta> funcMetas = functionsByService.remove(reference);
+			log.info("Removing {} functions of {}", (funcMetas == null) ? 0 : funcMetas.size(), service.getClass().getName());
+			if (!batchUpdate) {
+				publishRegistry();
+			}
+		}
+		bundleContext.ungetService(reference);
+	}
+	
+	/*
+	 * Builds a new registry from the already scanned functions of all tracked services and 
+	 * publishes it. No reflection happens here. Caller must hold the lock on this.
+	 */
+	@SuppressWarnings("unchecked")
+	private void publishRegistry() {
+		// highest ranked (then oldest) service first so it wins any route conflicts
+		List<ServiceReference> references = new ArrayList<>(functionsByService.keySet());
+		Collections.sort(references, Collections.reverseOrder());
+		
+		RestFunctionRegistryTrie<FunctionMeta> newRegistry = new RestFunctionRegistryTrie<>();
+		int count = 0;
+		for (ServiceReference reference : references) {
+			for (FunctionMeta funcMeta : functionsByService.get(reference)) {
+				log.debug("Registering {} to {}.{}", new Object[]{funcMeta.getOperation(), funcMeta.getSlingRestService().getClass().getName(), funcMeta.getJavaMethod()});
+				try {
+					newRegistry.addFunction(funcMeta.getOperation(), funcMeta);
+					count++;
+				} catch (IllegalArgumentException e) {
+					log.error("Failed to register " + funcMeta.getOperation(), e);
 				}
 			}
-		} else {
-			log.trace("trackingCounts match, no refresh. {}={}", localTrackingCount, actualCount);
 		}
+		
+		// publish fully built registry, compiled for lookups
+		RestFunctionRegistry<FunctionMeta> compiled = newRegistry.freeze();
+		registry = (routeCacheSize > 0) ? new CachingRestFunctionRegistry<>(compiled, routeCacheSize) : compiled;
+		generation++;
+		log.info("Published REST Function Registry with {} functions", count);
 	}
 	
 	private List<FunctionMeta> getFunctionMeta(final SlingRestService heroWebService) {
+		SlingRestRouteIndex index = loadRouteIndex(heroWebService.getClass());
+		if (index != null) {
+			return getFunctionMeta(heroWebService, index);
+		}
+		
 	    final List<FunctionMeta> ops = new ArrayList<>();
+	    final RestJsonSerializer serializer = new RestJsonSerializer();
 	    Class<?> clazz = heroWebService.getClass();
 	    if (clazz != Object.class) {
+	        final SlingRestBulkhead serviceLimits = clazz.getAnnotation(SlingRestBulkhead.class);
+	        final Bulkhead serviceBulkhead = (serviceLimits == null) ? null : createBulkhead(clazz.getName(), serviceLimits);
 	        final Method[] allMethods = clazz.getDeclaredMethods();       
 	        for (final Method method : allMethods) {
 	            if (method.isAnnotationPresent(SlingRestFunction.class)) {
+	            	RestFunctionInvoker invoker = createInvoker(heroWebService, method);
+	            	if (invoker == null) {
+	            		continue;
+	            	}
+	            	invoker = limitInvoker(invoker, clazz.getName() + "." + method.getName(), 
+	            			method.getAnnotation(SlingRestBulkhead.class), serviceLimits, serviceBulkhead);
+	            	
+	            	Type returnType = method.getGenericReturnType();
+	            	warmSerializer(serializer, returnType);
 	            	SlingRestFunction annotation = method.getAnnotation(SlingRestFunction.class);
 	            	String[] opsStr = annotation.value();
 	            	for (String opStr : opsStr) {
 		            	RestOperation op = RestOperation.fromString(opStr);
-		            	ops.add(new FunctionMeta(heroWebService, method.getName(), op));
+		            	ops.add(new FunctionMeta(heroWebService, method.getName(), op, invoker, returnType, annotation, serializer, 
+		            			metricsService.getRouteMetrics(op.toString())));
 	            	}
 	            }
 	        }
@@ -134,5 +266,110 @@ public class RestFunctionRegistryServiceImpl implements RestFunctionRegistryServ
 	    }
 	    return ops;
 	}
+	
+	/*
+	 * Functions from the route index generated at build time. Invokers call the methods directly 
+	 * and the routes were validated by the compiler, so the class is not scanned.
+	 */
+	private List<FunctionMeta> getFunctionMeta(SlingRestService heroWebService, SlingRestRouteIndex index) {
+		List<FunctionMeta> ops = new ArrayList<>();
+		RestJsonSerializer serializer = new RestJsonSerializer();
+		String className = heroWebService.getClass().getName();
+		SlingRestBulkhead serviceLimits = index.getBulkhead();
+		Bulkhead serviceBulkhead = (serviceLimits == null) ? null : createBulkhead(className, serviceLimits);
+		for (Route route : index.getRoutes(heroWebService)) {
+			RestFunctionInvoker invoker = limitInvoker(route.getInvoker(), className + "." + route.getJavaMethod(), 
+					route.getBulkhead(), serviceLimits, serviceBulkhead);
+			warmSerializer(serializer, route.getReturnType());
+			for (String opStr : route.getFunction().value()) {
+				RestOperation op = RestOperation.fromString(opStr);
+				ops.add(new FunctionMeta(heroWebService, route.getJavaMethod(), op, invoker, route.getReturnType(), 
+						route.getFunction(), serializer, metricsService.getRouteMetrics(op.toString())));
+			}
+		}
+		return ops;
+	}
+	
+	/*
+	 * Returns null if the class was compiled without the annotation processor.
+	 */
+	private static SlingRestRouteIndex loadRouteIndex(Class<?> clazz) {
+		ClassLoader classLoader = clazz.getClassLoader();
+		if (classLoader == null) {
+			return null;
+		}
+		try {
+			Class<?> indexClass = classLoader.loadClass(clazz.getName() + SlingRestRouteIndex.CLASS_SUFFIX);
+			return (SlingRestRouteIndex) indexClass.newInstance();
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (InstantiationException | IllegalAccessException | ClassCastException | LinkageError e) {
+			log.warn("Ignoring route index of " + clazz.getName() + ", scanning the class instead", e);
+			return null;
+		}
+	}
+	
+	/*
+	 * A function bulkhead gets its own limit, otherwise the function shares the one of the service.
+	 */
+	private RestFunctionInvoker limitInvoker(RestFunctionInvoker invoker, String name, SlingRestBulkhead limits, 
+			SlingRestBulkhead serviceLimits, Bulkhead serviceBulkhead) {
+		if (limits != null) {
+			return createBulkheadInvoker(invoker, limits, createBulkhead(name, limits), name);
+		} else if (serviceLimits != null) {
+			return createBulkheadInvoker(invoker, serviceLimits, serviceBulkhead, name);
+		}
+		return invoker;
+	}
+	
+	private static Bulkhead createBulkhead(String name, SlingRestBulkhead limits) {
+		if (limits.maxConcurrent() <= 0) {
+			return null;
+		}
+		return new Bulkhead(name, limits.maxConcurrent(), limits.maxQueued(), limits.maxWait());
+	}
+	
+	private RestFunctionInvoker createBulkheadInvoker(RestFunctionInvoker invoker, SlingRestBulkhead limits, Bulkhead bulkhead, String name) {
+		if (bulkhead == null && limits.timeout() <= 0) {
+			return invoker;
+		}
+		log.debug("Limiting {} to {} concurrent invocations with a deadline of {} ms", new Object[]{name, limits.maxConcurrent(), limits.timeout()});
+		return new BulkheadInvoker(invoker, bulkhead, limits.timeout());
+	}
+	
+	/*
+	 * Prepare the serializer of a service for functions that return their own objects rather than a 
+	 * RestResponse or String.
+	 */
+	private void warmSerializer(RestJsonSerializer serializer, Type returnType) {
+		if (returnType == Object.class || returnType == void.class || returnType == String.class || returnType == RestResponse.class) {
+			return;
+		}
+		try {
+			serializer.warm(returnType);
+		} catch (RuntimeException e) {
+			log.warn("Failed to prepare JSON serializer for " + returnType, e);
+		}
+	}
+	
+	/*
+	 * Resolves the invoker once at registration time so request dispatch does not need to
+	 * look up or reflectively invoke the method. Returns null if the method can not be
+	 * used as a REST function.
+	 */
+	private RestFunctionInvoker createInvoker(final SlingRestService heroWebService, final Method method) {
+		if (!Arrays.equals(method.getParameterTypes(), FUNCTION_PARAMETER_TYPES)) {
+			log.error("Skipping {}.{}. REST functions must have a parameter signature of ({}, {})", new Object[]{
+					heroWebService.getClass().getName(), method.getName(), 
+					SlingHttpServletRequest.class.getSimpleName(), SlingHttpServletResponse.class.getSimpleName()});
+			return null;
+		}
+		try {
+			return MethodHandleInvoker.create(heroWebService, method);
+		} catch (IllegalAccessException e) {
+			log.error("Skipping {}.{}. REST functions must be public.", heroWebService.getClass().getName(), method.getName());
+			return null;
+		}
+	}
 
 }
@@ -0,0 +1,90 @@
+package com.herodigital.wcm.internal.rest.service.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.herodigital.wcm.internal.rest.metrics.RouteMetrics;
+import com.herodigital.wcm.internal.rest.service.RestMetricsService;
+
+/**
+ * Publishes each {@link RouteMetrics} as an MBean on the platform MBean server, 
+ * named {@code com.herodigital.wcm.rest:type=RouteMetrics,route="GET:/api/user/{id}"}.
+ * 
+ * @author joelepps
+ *
+ */
+@Component(immediate = true, metatype = false, label="Sling REST Metrics Service", description="Collects per route metrics of REST functions")
+@Service(RestMetricsService.class)
+@Properties({
+	@Property(name = "service.vendor", value = "Hero Digital"),
+	@Property(name = "service.description", value = "Collects per route metrics of REST functions"),
+})
+public class RestMetricsServiceImpl implements RestMetricsService {
+	
+	static final String JMX_DOMAIN = "com.herodigital.wcm.rest";
+	
+	private static final Logger log = LoggerFactory.getLogger(RestMetricsServiceImpl.class);
+	
+	private final ConcurrentMap<String, RouteMetrics> metrics = new ConcurrentHashMap<>();
+	
+	private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+	
+	@Deactivate
+	public void deactivate() {
+		for (RouteMetrics routeMetrics : metrics.values()) {
+			try {
+				mBeanServer.unregisterMBean(objectName(routeMetrics.getRoute()));
+			} catch (JMException e) {
+				log.debug("Could not unregister metrics MBean of " + routeMetrics.getRoute(), e);
+			}
+		}
+		metrics.clear();
+	}
+
+	@Override
+	public RouteMetrics getRouteMetrics(String route) {
+		RouteMetrics routeMetrics = metrics.get(route);
+		if (routeMetrics == null) {
+			RouteMetrics newMetrics = new RouteMetrics(route);
+			routeMetrics = metrics.putIfAbsent(route, newMetrics);
+			if (routeMetrics == null) {
+				routeMetrics = newMetrics;
+				register(newMetrics);
+			}
+		}
+		return routeMetrics;
+	}
+
+	@Override
+	public Collection<RouteMetrics> getAllRouteMetrics() {
+		return Collections.unmodifiableCollection(metrics.values());
+	}
+	
+	private void register(RouteMetrics routeMetrics) {
+		try {
+			mBeanServer.registerMBean(routeMetrics, objectName(routeMetrics.getRoute()));
+		} catch (JMException e) {
+			log.warn("Could not register metrics MBean of " + routeMetrics.getRoute(), e);
+		}
+	}
+	
+	static ObjectName objectName(String route) throws JMException {
+		return new ObjectName(JMX_DOMAIN + ":type=RouteMetrics,route=" + ObjectName.quote(route));
+	}
+
+}
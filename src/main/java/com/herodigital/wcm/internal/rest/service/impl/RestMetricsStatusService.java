@@ -0,0 +1,85 @@
+package com.herodigital.wcm.internal.rest.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+
+import com.herodigital.wcm.internal.rest.metrics.RouteMetrics;
+import com.herodigital.wcm.internal.rest.service.RestMetricsService;
+import com.herodigital.wcm.internal.rest.service.SlingRestFunction;
+import com.herodigital.wcm.internal.rest.service.SlingRestService;
+
+/**
+ * JSON view of the route metrics at {@code /system/sling-rest/metrics.ws.json}. 
+ * <p>
+ * Only active if a configuration exists for this component, so that metrics are not public by default.
+ * 
+ * @author joelepps
+ *
+ */
+@Component(immediate = true, metatype = true, policy = ConfigurationPolicy.REQUIRE, 
+		label="Sling REST Metrics Status Service", description="Serves REST route metrics as JSON. Active only when configured.")
+@Service(SlingRestService.class)
+@Properties({
+	@Property(name = "service.vendor", value = "Hero Digital"),
+	@Property(name = "service.description", value = "Serves REST route metrics as JSON"),
+})
+public class RestMetricsStatusService implements SlingRestService {
+	
+	@Reference
+	private RestMetricsService metricsService;
+	
+	@SlingRestFunction("GET:/system/sling-rest/metrics")
+	public List<RouteStatus> metrics(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+		List<RouteStatus> result = new ArrayList<>();
+		for (RouteMetrics routeMetrics : metricsService.getAllRouteMetrics()) {
+			result.add(new RouteStatus(routeMetrics));
+		}
+		Collections.sort(result, new Comparator<RouteStatus>() {
+			@Override
+			public int compare(RouteStatus o1, RouteStatus o2) {
+				return o1.route.compareTo(o2.route);
+			}
+		});
+		return result;
+	}
+	
+	/**
+	 * Point in time copy of a {@link RouteMetrics}, serialized as JSON.
+	 */
+	public static class RouteStatus {
+		private final String route;
+		private final long count;
+		private final long errorCount;
+		private final Map<String, Long> errors;
+		private final double meanMillis;
+		private final double p50Millis;
+		private final double p99Millis;
+		private final double maxMillis;
+		private final long bytesWritten;
+		
+		RouteStatus(RouteMetrics metrics) {
+			this.route = metrics.getRoute();
+			this.count = metrics.getCount();
+			this.errorCount = metrics.getErrorCount();
+			this.errors = metrics.getErrors();
+			this.meanMillis = metrics.getMeanMillis();
+			this.p50Millis = metrics.getP50Millis();
+			this.p99Millis = metrics.getP99Millis();
+			this.maxMillis = metrics.getMaxMillis();
+			this.bytesWritten = metrics.getBytesWritten();
+		}
+	}
+
+}
@@ -0,0 +1,365 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletInputStream;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestParameter;
+import org.apache.sling.api.request.RequestParameterMap;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.wrappers.SlingHttpServletRequestWrapper;
+
+import com.herodigital.wcm.internal.rest.service.RestResponse;
+
+/**
+ * The request seen by the function of one {@link BatchOperation}.
+ * <p>
+ * Method, path, query parameters and body are those of the operation. Attributes set on it are private to the 
+ * operation. Conditional and compression headers of the batch request are hidden because the operation 
+ * response is embedded in the batch response. Everything else, including the resource resolver, is shared 
+ * with the batch request, so operations must run one after another on the request thread.
+ * 
+ * @author joelepps
+ *
+ */
+final class BatchItemRequest extends SlingHttpServletRequestWrapper {
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final byte[] NO_BODY = new byte[0];
+	
+	private final BatchOperation operation;
+	private final byte[] body;
+	private final Map<String, Object> attributes = new HashMap<>();
+	private Map<String, String[]> parameters;
+	private RequestParameterMap requestParameters;
+	
+	BatchItemRequest(SlingHttpServletRequest request, BatchOperation operation) {
+		super(request);
+		this.operation = operation;
+		this.body = (operation.getBody() == null) ? NO_BODY : operation.getBody().getBytes(UTF_8);
+	}
+	
+	@Override
+	public String getMethod() {
+		return operation.getOperation().getMethod().name();
+	}
+	
+	@Override
+	public String getPathInfo() {
+		return operation.getOperation().getPath();
+	}
+	
+	@Override
+	public RequestPathInfo getRequestPathInfo() {
+		return new ItemPathInfo(operation.getOperation().getPath());
+	}
+	
+	@Override
+	public String getHeader(String name) {
+		return isHidden(name) ? null : super.getHeader(name);
+	}
+	
+	@Override
+	public Enumeration<?> getHeaders(String name) {
+		return isHidden(name) ? Collections.enumeration(Collections.emptyList()) : super.getHeaders(name);
+	}
+	
+	@Override
+	public Enumeration<?> getHeaderNames() {
+		List<Object> names = new ArrayList<>();
+		Enumeration<?> all = super.getHeaderNames();
+		while (all != null && all.hasMoreElements()) {
+			Object name = all.nextElement();
+			if (!isHidden(String.valueOf(name))) {
+				names.add(name);
+			}
+		}
+		return Collections.enumeration(names);
+	}
+	
+	private static boolean isHidden(String header) {
+		return EntityTags.HEADER_IF_NONE_MATCH.equalsIgnoreCase(header) || ResponseCompression.HEADER_ACCEPT_ENCODING.equalsIgnoreCase(header);
+	}
+	
+	@Override
+	public Object getAttribute(String name) {
+		Object value = attributes.get(name);
+		return (value != null) ? value : super.getAttribute(name);
+	}
+	
+	@Override
+	public void setAttribute(String name, Object value) {
+		if (value == null) {
+			attributes.remove(name);
+		} else {
+			attributes.put(name, value);
+		}
+	}
+	
+	@Override
+	public void removeAttribute(String name) {
+		attributes.remove(name);
+	}
+	
+	@Override
+	public String getQueryString() {
+		return operation.getQueryString();
+	}
+	
+	@Override
+	public String getParameter(String name) {
+		String[] values = getParameterMap().get(name);
+		return (values == null) ? null : values[0];
+	}
+	
+	@Override
+	public String[] getParameterValues(String name) {
+		return getParameterMap().get(name);
+	}
+	
+	@Override
+	public Enumeration<?> getParameterNames() {
+		return Collections.enumeration(getParameterMap().keySet());
+	}
+	
+	@Override
+	public Map<String, String[]> getParameterMap() {
+		if (parameters == null) {
+			parameters = parseQueryString(operation.getQueryString());
+		}
+		return parameters;
+	}
+	
+	@Override
+	public RequestParameter getRequestParameter(String name) {
+		return getRequestParameterMap().getValue(name);
+	}
+	
+	@Override
+	public RequestParameter[] getRequestParameters(String name) {
+		return getRequestParameterMap().getValues(name);
+	}
+	
+	@Override
+	public RequestParameterMap getRequestParameterMap() {
+		if (requestParameters == null) {
+			ItemParameterMap map = new ItemParameterMap();
+			for (Map.Entry<String, String[]> entry : getParameterMap().entrySet()) {
+				RequestParameter[] values = new RequestParameter[entry.getValue().length];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = new QueryParameter(entry.getValue()[i]);
+				}
+				map.put(entry.getKey(), values);
+			}
+			requestParameters = map;
+		}
+		return requestParameters;
+	}
+	
+	@Override
+	public String getContentType() {
+		return (operation.getBody() == null) ? null : RestResponse.CONTENT_TYPE_DEFAULT;
+	}
+	
+	@Override
+	public String getCharacterEncoding() {
+		return RestResponse.CHARACTER_SET_DEFAULT;
+	}
+	
+	@Override
+	public int getContentLength() {
+		return body.length;
+	}
+	
+	@Override
+	public ServletInputStream getInputStream() {
+		final ByteArrayInputStream in = new ByteArrayInputStream(body);
+		return new ServletInputStream() {
+			@Override
+			public int read() {
+				return in.read();
+			}
+			
+			@Override
+			public int read(byte[] b, int off, int len) {
+				return in.read(b, off, len);
+			}
+		};
+	}
+	
+	@Override
+	public BufferedReader getReader() {
+		return new BufferedReader(new StringReader((operation.getBody() == null) ? "" : operation.getBody()));
+	}
+	
+	private static Map<String, String[]> parseQueryString(String queryString) {
+		if (queryString == null || queryString.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Map<String, List<String>> values = new LinkedHashMap<>();
+		for (String pair : queryString.split("&")) {
+			if (pair.isEmpty()) {
+				continue;
+			}
+			int equals = pair.indexOf('=');
+			String name = decode((equals < 0) ? pair : pair.substring(0, equals));
+			String value = (equals < 0) ? "" : decode(pair.substring(equals + 1));
+			List<String> list = values.get(name);
+			if (list == null) {
+				list = new ArrayList<>(1);
+				values.put(name, list);
+			}
+			list.add(value);
+		}
+		Map<String, String[]> result = new LinkedHashMap<>();
+		for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().toArray(new String[entry.getValue().size()]));
+		}
+		return Collections.unmodifiableMap(result);
+	}
+	
+	private static String decode(String s) {
+		try {
+			return URLDecoder.decode(s, "UTF-8");
+		} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+			return s;
+		}
+	}
+	
+	/*
+	 * Resource path, selectors and extension split from the last segment of the operation path. No suffix.
+	 */
+	private static final class ItemPathInfo implements RequestPathInfo {
+		private final String resourcePath;
+		private final String selectorString;
+		private final String[] selectors;
+		private final String extension;
+		
+		ItemPathInfo(String path) {
+			int dot = path.indexOf('.', path.lastIndexOf('/') + 1);
+			if (dot < 0) {
+				resourcePath = path;
+				selectorString = null;
+				selectors = new String[0];
+				extension = null;
+			} else {
+				resourcePath = path.substring(0, dot);
+				int lastDot = path.lastIndexOf('.');
+				selectorString = (lastDot > dot) ? path.substring(dot + 1, lastDot) : null;
+				selectors = (selectorString == null) ? new String[0] : selectorString.split("\\.");
+				extension = path.substring(lastDot + 1);
+			}
+		}
+		
+		@Override
+		public String getResourcePath() {
+			return resourcePath;
+		}
+		
+		@Override
+		public String getExtension() {
+			return extension;
+		}
+		
+		@Override
+		public String getSelectorString() {
+			return selectorString;
+		}
+		
+		@Override
+		public String[] getSelectors() {
+			return selectors.clone();
+		}
+		
+		@Override
+		public String getSuffix() {
+			return null;
+		}
+	}
+	
+	private static final class ItemParameterMap extends LinkedHashMap<String, RequestParameter[]> implements RequestParameterMap {
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		public RequestParameter[] getValues(String name) {
+			return get(name);
+		}
+		
+		@Override
+		public RequestParameter getValue(String name) {
+			RequestParameter[] values = get(name);
+			return (values == null) ? null : values[0];
+		}
+	}
+	
+	/*
+	 * Decoded query string value, a form field without a file.
+	 */
+	private static final class QueryParameter implements RequestParameter {
+		private final String value;
+		
+		QueryParameter(String value) {
+			this.value = value;
+		}
+		
+		@Override
+		public boolean isFormField() {
+			return true;
+		}
+		
+		@Override
+		public String getContentType() {
+			return null;
+		}
+		
+		@Override
+		public long getSize() {
+			return get().length;
+		}
+		
+		@Override
+		public byte[] get() {
+			return value.getBytes(UTF_8);
+		}
+		
+		@Override
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(get());
+		}
+		
+		@Override
+		public String getFileName() {
+			return null;
+		}
+		
+		@Override
+		public String getString() {
+			return value;
+		}
+		
+		@Override
+		public String getString(String encoding) {
+			return value;
+		}
+		
+		@Override
+		public String toString() {
+			return value;
+		}
+	}
+
+}
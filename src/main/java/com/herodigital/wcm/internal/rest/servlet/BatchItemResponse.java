@@ -0,0 +1,222 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.wrappers.SlingHttpServletResponseWrapper;
+
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.herodigital.wcm.internal.rest.service.RestResponse;
+
+/**
+ * Captures the response of one {@link BatchOperation} so it can be embedded in the batch response.
+ * <p>
+ * Status and body are buffered. Headers are dropped, they would otherwise end up on the batch response.
+ * 
+ * @author joelepps
+ *
+ */
+final class BatchItemResponse extends SlingHttpServletResponseWrapper {
+	
+	private int status = HttpServletResponse.SC_OK;
+	private String contentType;
+	private String charSet = RestResponse.CHARACTER_SET_DEFAULT;
+	private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+	private ServletOutputStream outputStream;
+	private PrintWriter writer;
+	
+	BatchItemResponse(SlingHttpServletResponse response) {
+		super(response);
+	}
+	
+	int getStatus() {
+		return status;
+	}
+	
+	/**
+	 * Writes {@code {"status":200,"body":...}}. Valid JSON bodies are embedded as is, any other body, 
+	 * including malformed JSON, as a JSON string.
+	 * 
+	 * @param out writer of the batch response
+	 * @throws IOException
+	 */
+	void writeJsonTo(Writer out) throws IOException {
+		if (writer != null) {
+			writer.flush();
+		}
+		out.write("{\"status\":");
+		out.write(Integer.toString(status));
+		out.write(",\"body\":");
+		String text = body.toString(charSet);
+		if (text.isEmpty()) {
+			out.write("null");
+		} else if (contentType != null && contentType.contains("json") && isJsonValue(text)) {
+			out.write(text);
+		} else {
+			out.write(new JsonPrimitive(text).toString());
+		}
+		out.write('}');
+	}
+	
+	/*
+	 * True if text is exactly one valid JSON value, so embedding it keeps the batch response valid. 
+	 * Gson 2.3 rejects top level primitives in strict mode, so the text is checked as the only element of an array.
+	 */
+	private static boolean isJsonValue(String text) {
+		JsonReader reader = new JsonReader(new StringReader("[" + text + "]"));
+		try {
+			reader.beginArray();
+			if (!reader.hasNext()) {
+				return false;
+			}
+			reader.skipValue();
+			reader.endArray();
+			return reader.peek() == JsonToken.END_DOCUMENT;
+		} catch (IOException | IllegalStateException e) {
+			return false;
+		}
+	}
+	
+	@Override
+	public void setStatus(int sc) {
+		this.status = sc;
+	}
+	
+	@Override
+	@Deprecated
+	public void setStatus(int sc, String sm) {
+		this.status = sc;
+	}
+	
+	@Override
+	public void sendError(int sc) {
+		this.status = sc;
+	}
+	
+	@Override
+	public void sendError(int sc, String msg) {
+		this.status = sc;
+	}
+	
+	@Override
+	public void sendRedirect(String location) {
+		this.status = HttpServletResponse.SC_FOUND;
+	}
+	
+	@Override
+	public void setContentType(String type) {
+		this.contentType = type;
+	}
+	
+	@Override
+	public String getContentType() {
+		return contentType;
+	}
+	
+	@Override
+	public void setCharacterEncoding(String charset) {
+		if (charset != null) {
+			this.charSet = charset;
+		}
+	}
+	
+	@Override
+	public String getCharacterEncoding() {
+		return charSet;
+	}
+	
+	@Override
+	public ServletOutputStream getOutputStream() {
+		if (outputStream == null) {
+			outputStream = new ServletOutputStream() {
+				@Override
+				public void write(int b) {
+					body.write(b);
+				}
+				
+				@Override
+				public void write(byte[] b, int off, int len) {
+					body.write(b, off, len);
+				}
+			};
+		}
+		return outputStream;
+	}
+	
+	@Override
+	public PrintWriter getWriter() {
+		if (writer == null) {
+			writer = new PrintWriter(new OutputStreamWriter(body, Charset.forName(charSet)));
+		}
+		return writer;
+	}
+	
+	@Override
+	public boolean isCommitted() {
+		return false;
+	}
+	
+	@Override
+	public void reset() {
+		resetBuffer();
+		status = HttpServletResponse.SC_OK;
+		contentType = null;
+	}
+	
+	@Override
+	public void resetBuffer() {
+		if (writer != null) {
+			writer.flush();
+		}
+		body.reset();
+	}
+	
+	@Override
+	public void flushBuffer() {
+	}
+	
+	@Override
+	public void setContentLength(int len) {
+	}
+	
+	@Override
+	public boolean containsHeader(String name) {
+		return false;
+	}
+	
+	@Override
+	public void setHeader(String name, String value) {
+	}
+	
+	@Override
+	public void addHeader(String name, String value) {
+	}
+	
+	@Override
+	public void setIntHeader(String name, int value) {
+	}
+	
+	@Override
+	public void addIntHeader(String name, int value) {
+	}
+	
+	@Override
+	public void setDateHeader(String name, long date) {
+	}
+	
+	@Override
+	public void addDateHeader(String name, long date) {
+	}
+
+}
@@ -0,0 +1,140 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.herodigital.wcm.internal.rest.registry.HttpMethod;
+import com.herodigital.wcm.internal.rest.registry.RestOperation;
+import com.herodigital.wcm.internal.rest.service.SlingRestServiceException;
+
+/**
+ * One operation of a batch request. 
+ * <p>
+ * A batch request body is a JSON array of operations:
+ * <pre>
+ * [
+ *   {"method": "GET", "path": "/api/user/123?fields=name"},
+ *   {"method": "POST", "path": "/api/user/123/roles", "body": {"role": "admin"}}
+ * ]
+ * </pre>
+ * The path may end with the REST selector and extension and may have a query string. The path is URL decoded 
+ * like a request path, '+' stays as is; the query string is decoded when parameters are read. A body that is a JSON 
+ * string is passed as is, any other JSON value is passed as JSON.
+ * 
+ * @author joelepps
+ *
+ */
+final class BatchOperation {
+	
+	private final RestOperation operation;
+	private final String queryString;
+	private final String body;
+	
+	BatchOperation(RestOperation operation, String queryString, String body) {
+		this.operation = operation;
+		this.queryString = queryString;
+		this.body = body;
+	}
+	
+	RestOperation getOperation() {
+		return operation;
+	}
+	
+	/**
+	 * @return query string without '?' or null
+	 */
+	String getQueryString() {
+		return queryString;
+	}
+	
+	/**
+	 * @return request body or null
+	 */
+	String getBody() {
+		return body;
+	}
+	
+	/**
+	 * @param reader batch request body
+	 * @param maxOperations maximum number of operations
+	 * @return operations in request order
+	 * @throws SlingRestServiceException validation error if the body is malformed or has too many operations
+	 */
+	static List<BatchOperation> parse(Reader reader, int maxOperations) throws SlingRestServiceException {
+		JsonElement root;
+		try {
+			root = new JsonParser().parse(reader);
+		} catch (JsonParseException e) {
+			throw invalid("Batch request is not valid JSON.");
+		}
+		if (root == null || !root.isJsonArray()) {
+			throw invalid("Batch request must be a JSON array of operations.");
+		}
+		JsonArray array = root.getAsJsonArray();
+		if (array.size() > maxOperations) {
+			throw invalid("Batch request has more than " + maxOperations + " operations.");
+		}
+		
+		List<BatchOperation> result = new ArrayList<>(array.size());
+		for (JsonElement element : array) {
+			if (!element.isJsonObject()) {
+				throw invalid("Batch operation must be a JSON object.");
+			}
+			result.add(fromJson(element.getAsJsonObject()));
+		}
+		return result;
+	}
+	
+	private static BatchOperation fromJson(JsonObject json) throws SlingRestServiceException {
+		String method = getString(json, "method");
+		String path = getString(json, "path");
+		if (method == null || path == null || !path.startsWith("/")) {
+			throw invalid("Batch operation requires a method and an absolute path.");
+		}
+		HttpMethod httpMethod;
+		try {
+			httpMethod = HttpMethod.valueOf(method.toUpperCase(Locale.ENGLISH));
+		} catch (IllegalArgumentException e) {
+			throw invalid("Unsupported method " + method + " in batch operation.");
+		}
+		
+		String queryString = null;
+		int query = path.indexOf('?');
+		if (query >= 0) {
+			queryString = path.substring(query + 1);
+			path = path.substring(0, query);
+		}
+		try {
+			path = URLDecoder.decode(path.replace("+", "%2B"), "UTF-8");
+		} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+			throw invalid("Batch operation path " + path + " is not URL encoded.");
+		}
+		
+		String body = null;
+		JsonElement bodyJson = json.get("body");
+		if (bodyJson != null && !bodyJson.isJsonNull()) {
+			boolean isString = bodyJson.isJsonPrimitive() && bodyJson.getAsJsonPrimitive().isString();
+			body = isString ? bodyJson.getAsString() : bodyJson.toString();
+		}
+		return new BatchOperation(new RestOperation(httpMethod, path), queryString, body);
+	}
+	
+	private static String getString(JsonObject json, String name) {
+		JsonElement element = json.get(name);
+		return (element != null && element.isJsonPrimitive()) ? element.getAsString() : null;
+	}
+	
+	private static SlingRestServiceException invalid(String message) {
+		return new SlingRestServiceException.Builder(SlingRestServiceException.CATEGORY_VALIDATION, message).create();
+	}
+
+}
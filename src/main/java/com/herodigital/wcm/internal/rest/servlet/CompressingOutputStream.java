@@ -0,0 +1,103 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.sling.api.SlingHttpServletResponse;
+
+import com.herodigital.wcm.internal.rest.servlet.ResponseCompression.Encoding;
+
+/**
+ * Response stream that compresses once the body reaches a minimum size.
+ * <p>
+ * The first bytes are held back until either the minimum size is reached, in which case the 
+ * compression headers are set and everything is streamed through the compressor, or the stream 
+ * is closed, in which case the body is sent uncompressed with a Content-Length.
+ * 
+ * @author joelepps
+ *
+ */
+final class CompressingOutputStream extends OutputStream {
+	
+	private final SlingHttpServletResponse response;
+	private final OutputStream target;
+	private final Encoding encoding;
+	private final String eTag;
+	private final byte[] buffer;
+	private int count;
+	private OutputStream out;
+	private boolean closed;
+	
+	/**
+	 * @param response response, status and headers must already be set
+	 * @param target stream of the response body
+	 * @param encoding encoding to use
+	 * @param minSize minimum body size in bytes to compress
+	 * @param eTag ETag of the uncompressed body or null. Sent as a weak ETag if the body is compressed.
+	 */
+	CompressingOutputStream(SlingHttpServletResponse response, OutputStream target, Encoding encoding, int minSize, String eTag) {
+		this.response = response;
+		this.target = target;
+		this.encoding = encoding;
+		this.eTag = eTag;
+		this.buffer = new byte[minSize];
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		if (out == null && count == buffer.length) {
+			startCompression();
+		}
+		if (out != null) {
+			out.write(b);
+		} else {
+			buffer[count++] = (byte) b;
+		}
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (out == null && count + len > buffer.length) {
+			startCompression();
+		}
+		if (out != null) {
+			out.write(b, off, len);
+		} else {
+			System.arraycopy(b, off, buffer, count, len);
+			count += len;
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		// below the minimum size nothing is sent until close
+		if (out != null) {
+			out.flush();
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (out != null) {
+			out.close();
+		} else {
+			response.setContentLength(count);
+			target.write(buffer, 0, count);
+			target.close();
+		}
+	}
+	
+	private void startCompression() throws IOException {
+		response.setHeader(ResponseCompression.HEADER_CONTENT_ENCODING, encoding.getToken());
+		if (eTag != null) {
+			response.setHeader(EntityTags.HEADER_ETAG, EntityTags.weak(eTag));
+		}
+		out = encoding.wrap(target);
+		out.write(buffer, 0, count);
+	}
+
+}
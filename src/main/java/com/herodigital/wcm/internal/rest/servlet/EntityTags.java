@@ -0,0 +1,120 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * ETag helpers for conditional GET requests.
+ * 
+ * @author joelepps
+ *
+ */
+final class EntityTags {
+	
+	static final String HEADER_ETAG = "ETag";
+	static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+	
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	
+	private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("MD5 not supported", e);
+			}
+		}
+	};
+	
+	private EntityTags() {
+	}
+	
+	/**
+	 * @param token version token, quoted or not
+	 * @return quoted entity tag
+	 */
+	static String format(String token) {
+		if (token.startsWith("\"") || token.startsWith("W/\"")) {
+			return token;
+		}
+		return "\"" + token + "\"";
+	}
+	
+	/**
+	 * A compressed body is not byte for byte the entity the strong ETag was made for.
+	 * 
+	 * @param eTag quoted entity tag
+	 * @return weak version of {@code eTag}
+	 */
+	static String weak(String eTag) {
+		return eTag.startsWith("W/") ? eTag : "W/" + eTag;
+	}
+	
+	/**
+	 * @param body response body
+	 * @return strong entity tag of the body content
+	 */
+	static String compute(byte[] body) {
+		MessageDigest digest = DIGEST.get();
+		byte[] hash = digest.digest(body);
+		char[] chars = new char[hash.length * 2 + 2];
+		chars[0] = '"';
+		for (int i = 0; i < hash.length; i++) {
+			chars[i * 2 + 1] = HEX[(hash[i] >> 4) & 0xf];
+			chars[i * 2 + 2] = HEX[hash[i] & 0xf];
+		}
+		chars[chars.length - 1] = '"';
+		return new String(chars);
+	}
+	
+	/**
+	 * Weak comparison of an If-None-Match header against an entity tag, see RFC 7232 section 3.2.
+	 * 
+	 * @param ifNoneMatch header value, may be null
+	 * @param eTag quoted entity tag, may be null
+	 * @return true if the client has the current version
+	 */
+	static boolean matches(String ifNoneMatch, String eTag) {
+		if (ifNoneMatch == null || eTag == null) {
+			return false;
+		}
+		int tagStart = opaqueStart(eTag, 0);
+		int tagLength = eTag.length() - tagStart;
+		
+		int length = ifNoneMatch.length();
+		int i = 0;
+		while (i < length) {
+			char c = ifNoneMatch.charAt(i);
+			if (c == ' ' || c == '\t' || c == ',') {
+				i++;
+				continue;
+			}
+			if (c == '*') {
+				return true;
+			}
+			int start = opaqueStart(ifNoneMatch, i);
+			if (start >= length || ifNoneMatch.charAt(start) != '"') {
+				return false; // malformed
+			}
+			int end = ifNoneMatch.indexOf('"', start + 1);
+			if (end < 0) {
+				return false; // malformed
+			}
+			end++;
+			if (end - start == tagLength && ifNoneMatch.regionMatches(start, eTag, tagStart, tagLength)) {
+				return true;
+			}
+			i = end;
+		}
+		return false;
+	}
+	
+	/*
+	 * Offset of the opening quote, skipping a weak indicator.
+	 */
+	private static int opaqueStart(String s, int i) {
+		return s.startsWith("W/", i) ? i + 2 : i;
+	}
+
+}
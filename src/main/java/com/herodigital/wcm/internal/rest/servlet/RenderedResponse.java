@@ -0,0 +1,174 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import org.apache.sling.api.SlingHttpServletResponse;
+
+import com.herodigital.wcm.internal.rest.service.RestResponse;
+import com.herodigital.wcm.internal.rest.servlet.ResponseCompression.Encoding;
+
+/**
+ * A {@link RestResponse} whose body has been encoded into bytes. Immutable, so a single
+ * instance can be written to any number of responses.
+ * 
+ * @author joelepps
+ *
+ */
+final class RenderedResponse {
+	
+	/*
+	 * Rough size of the object headers, fields and cache bookkeeping of an entry 
+	 */
+	private static final int OVERHEAD = 128;
+	
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	private final int httpStatus;
+	private final String contentType;
+	private final String charSet;
+	private final byte[] body;
+	private final String eTag;
+	
+	/*
+	 * Compressed forms of body, created on first use. Racing threads may both compress, the result is the same.
+	 */
+	private volatile byte[] gzipBody;
+	private volatile byte[] deflateBody;
+	
+	private RenderedResponse(int httpStatus, String contentType, String charSet, byte[] body, String eTag) {
+		this.httpStatus = httpStatus;
+		this.contentType = contentType;
+		this.charSet = charSet;
+		this.body = body;
+		this.eTag = eTag;
+	}
+	
+	/**
+	 * Encodes the body of {@code restResponse}, running its {@link RestResponse.BodyWriter} if it has one.
+	 * 
+	 * @param restResponse response
+	 * @param withETag use the ETag of {@code restResponse} or compute one from the encoded body
+	 * @return rendered response
+	 * @throws IOException if the body writer fails
+	 */
+	static RenderedResponse render(RestResponse restResponse, boolean withETag) throws IOException {
+		byte[] body;
+		if (restResponse.getBodyWriter() != null) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+			Writer writer = new OutputStreamWriter(out, restResponse.getCharSet());
+			restResponse.getBodyWriter().writeTo(writer);
+			writer.close();
+			body = out.toByteArray();
+		} else {
+			body = String.valueOf(restResponse.getJson()).getBytes(restResponse.getCharSet());
+		}
+		String eTag = null;
+		if (withETag) {
+			eTag = (restResponse.getETag() != null) ? EntityTags.format(restResponse.getETag()) : EntityTags.compute(body);
+		}
+		return new RenderedResponse(restResponse.getHttpStatus(), restResponse.getContentType(), restResponse.getCharSet(), body, eTag);
+	}
+	
+	/**
+	 * @param httpStatus status
+	 * @param json UTF-8 JSON body
+	 * @return rendered response without ETag
+	 */
+	static RenderedResponse ofJson(int httpStatus, String json) {
+		return new RenderedResponse(httpStatus, RestResponse.CONTENT_TYPE_DEFAULT, RestResponse.CHARACTER_SET_DEFAULT, json.getBytes(UTF_8), null);
+	}
+	
+	int getHttpStatus() {
+		return httpStatus;
+	}
+	
+	byte[] getBody() {
+		return body;
+	}
+	
+	/**
+	 * @return quoted entity tag or null
+	 */
+	String getETag() {
+		return eTag;
+	}
+	
+	/**
+	 * @param encoding encoding
+	 * @return body compressed with {@code encoding}
+	 * @throws IOException 
+	 */
+	byte[] getBody(Encoding encoding) throws IOException {
+		byte[] compressed = (encoding == Encoding.GZIP) ? gzipBody : deflateBody;
+		if (compressed == null) {
+			compressed = encoding.compress(body);
+			if (encoding == Encoding.GZIP) {
+				gzipBody = compressed;
+			} else {
+				deflateBody = compressed;
+			}
+		}
+		return compressed;
+	}
+	
+	/**
+	 * Create every compressed form {@link #writeTo(SlingHttpServletResponse, ResponseCompression, Encoding)} 
+	 * may use, so that {@link #getWeight()} does not grow afterwards.
+	 * 
+	 * @param compression compression settings
+	 * @throws IOException
+	 */
+	void compressAll(ResponseCompression compression) throws IOException {
+		if (compression.isCompressible(body.length)) {
+			for (Encoding encoding : Encoding.values()) {
+				getBody(encoding);
+			}
+		}
+	}
+	
+	/**
+	 * @return approximate memory used by this response in bytes, including compressed forms created so far
+	 */
+	int getWeight() {
+		byte[] gzip = gzipBody;
+		byte[] deflate = deflateBody;
+		return body.length + ((gzip == null) ? 0 : gzip.length) + ((deflate == null) ? 0 : deflate.length) + OVERHEAD;
+	}
+	
+	/**
+	 * @param response response
+	 * @param compression compression settings
+	 * @param encoding encoding accepted by the client or null
+	 * @return number of body bytes written
+	 * @throws IOException
+	 */
+	int writeTo(SlingHttpServletResponse response, ResponseCompression compression, Encoding encoding) throws IOException {
+		response.setStatus(httpStatus);
+		response.setContentType(contentType);
+		response.setCharacterEncoding(charSet);
+		
+		byte[] content = body;
+		String contentETag = eTag;
+		if (compression.isCompressible(body.length)) {
+			response.setHeader(ResponseCompression.HEADER_VARY, ResponseCompression.HEADER_ACCEPT_ENCODING);
+			if (encoding != null) {
+				content = getBody(encoding);
+				contentETag = (eTag == null) ? null : EntityTags.weak(eTag);
+				response.setHeader(ResponseCompression.HEADER_CONTENT_ENCODING, encoding.getToken());
+			}
+		}
+		if (contentETag != null) {
+			response.setHeader(EntityTags.HEADER_ETAG, contentETag);
+		}
+		response.setContentLength(content.length);
+		response.getOutputStream().write(content);
+		return content.length;
+	}
+
+}
@@ -0,0 +1,257 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.ResourceResolver;
+
+import com.herodigital.wcm.internal.rest.registry.RestFunctionRegistry.ResolvedFunction;
+import com.herodigital.wcm.internal.rest.service.RestFunctionRegistryService.FunctionMeta;
+import com.herodigital.wcm.internal.rest.service.SlingRestFunction;
+
+/**
+ * In memory cache of rendered GET responses for functions with a {@link SlingRestFunction#cacheTtl()}.
+ * <p>
+ * The cache is bounded by the total weight (approximate bytes) of its entries. Lookups never lock. When
+ * a put exceeds the bound, entries are evicted by sampling a few entries and removing the least recently 
+ * used one until the cache fits again. Expired entries are dropped when they are found by a lookup or 
+ * by the eviction sampling, which every put advances by one round even while the cache is within its bound.
+ * <p>
+ * Instances are thread safe.
+ * 
+ * @author joelepps
+ *
+ */
+public class ResponseCache {
+	
+	private static final int EVICTION_SAMPLE_SIZE = 8;
+	
+	private final long maxWeight;
+	private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+	private final Object evictionLock = new Object();
+	
+	/*
+	 * Position of the eviction sampling, continued by every eviction so all entries get sampled. Guarded by evictionLock.
+	 */
+	private Iterator<Map.Entry<Key, Entry>> hand;
+	
+	private final AtomicLong weight = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	
+	/**
+	 * @param maxWeight maximum total size of the cached responses in bytes
+	 */
+	public ResponseCache(long maxWeight) {
+		this.maxWeight = maxWeight;
+	}
+	
+	/**
+	 * Creates the cache key of a request. Wildcard values are taken from {@code resolvedFunction},
+	 * the query string, the {@link FunctionMeta#getCacheVaryHeaders()} and the user ID of the resource 
+	 * resolver from {@code request}, so responses are never shared between users.
+	 * 
+	 * @return key
+	 */
+	static Key key(FunctionMeta function, ResolvedFunction<FunctionMeta> resolvedFunction, SlingHttpServletRequest request) {
+		int wildcardCount = resolvedFunction.getWildcardCount();
+		String[] varyHeaders = function.getCacheVaryHeaders();
+		String[] values = new String[wildcardCount + varyHeaders.length + 2];
+		for (int i = 0; i < wildcardCount; i++) {
+			values[i] = resolvedFunction.getWildcardValue(i);
+		}
+		for (int i = 0; i < varyHeaders.length; i++) {
+			values[wildcardCount + i] = request.getHeader(varyHeaders[i]);
+		}
+		values[values.length - 2] = request.getQueryString();
+		values[values.length - 1] = getUserId(request);
+		return new Key(function, values);
+	}
+	
+	private static String getUserId(SlingHttpServletRequest request) {
+		ResourceResolver resolver = request.getResourceResolver();
+		return (resolver == null) ? null : resolver.getUserID();
+	}
+	
+	/**
+	 * @param key key
+	 * @return cached response or null if there is none or it has expired
+	 */
+	RenderedResponse get(Key key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		long now = System.nanoTime();
+		if (entry.isExpired(now)) {
+			remove(key, entry);
+			misses.incrementAndGet();
+			return null;
+		}
+		entry.lastAccess = now;
+		hits.incrementAndGet();
+		return entry.response;
+	}
+	
+	/**
+	 * @param key key
+	 * @param response response to cache, with its compressed forms already created
+	 * @param ttlMillis milliseconds the response is valid
+	 */
+	void put(Key key, RenderedResponse response, long ttlMillis) {
+		int entryWeight = response.getWeight();
+		if (entryWeight > maxWeight) {
+			return;
+		}
+		long now = System.nanoTime();
+		Entry entry = new Entry(response, now + TimeUnit.MILLISECONDS.toNanos(ttlMillis), now);
+		Entry previous = entries.put(key, entry);
+		weight.addAndGet((previous == null) ? entryWeight : entryWeight - previous.weight);
+		evict();
+	}
+	
+	/**
+	 * Remove all entries.
+	 */
+	public void clear() {
+		for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+			remove(entry.getKey(), entry.getValue());
+		}
+	}
+	
+	private boolean remove(Key key, Entry entry) {
+		if (entries.remove(key, entry)) {
+			weight.addAndGet(-entry.weight);
+			return true;
+		}
+		return false;
+	}
+	
+	/*
+	 * Approximate LRU. Each round looks at the next few entries of the hand and drops the expired ones. While the cache 
+	 * is over its bound, the least recently used sampled entry is removed as well and further rounds follow. At least one 
+	 * round runs, so expired entries do not linger in a cache that never fills up. One thread evicts at a time, lookups 
+	 * of other threads are not blocked.
+	 */
+	private void evict() {
+		synchronized (evictionLock) {
+			long now = System.nanoTime();
+			boolean sweep = true;
+			while (sweep || weight.get() > maxWeight) {
+				sweep = false;
+				Key victimKey = null;
+				Entry victim = null;
+				for (int i = 0; i < EVICTION_SAMPLE_SIZE; i++) {
+					if (hand == null || !hand.hasNext()) {
+						hand = entries.entrySet().iterator();
+						if (!hand.hasNext()) {
+							return;
+						}
+					}
+					Map.Entry<Key, Entry> candidate = hand.next();
+					Entry entry = candidate.getValue();
+					if (entry.isExpired(now)) {
+						if (remove(candidate.getKey(), entry)) {
+							evictions.incrementAndGet();
+						}
+					} else if (victim == null || entry.lastAccess < victim.lastAccess) {
+						victimKey = candidate.getKey();
+						victim = entry;
+					}
+				}
+				if (victim == null || weight.get() <= maxWeight) {
+					continue; // sampled entries were expired or the sweep freed enough
+				}
+				if (remove(victimKey, victim)) {
+					evictions.incrementAndGet();
+				}
+			}
+		}
+	}
+	
+	public long getHits() {
+		return hits.get();
+	}
+	
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	public long getEvictions() {
+		return evictions.get();
+	}
+	
+	/**
+	 * @return number of cached responses
+	 */
+	public int getSize() {
+		return entries.size();
+	}
+	
+	/**
+	 * @return approximate size of the cached responses in bytes
+	 */
+	public long getWeight() {
+		return weight.get();
+	}
+	
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+	
+	/**
+	 * Cache key: function identity, the request values the response depends on and the user.
+	 */
+	static final class Key {
+		private final FunctionMeta function;
+		private final String[] values;
+		private final int hash;
+		
+		Key(FunctionMeta function, String[] values) {
+			this.function = function;
+			this.values = values;
+			this.hash = 31 * System.identityHashCode(function) + Arrays.hashCode(values);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return hash == other.hash && function == other.function && Arrays.equals(values, other.values);
+		}
+	}
+	
+	private static final class Entry {
+		private final RenderedResponse response;
+		private final long expires;
+		private final int weight;
+		private volatile long lastAccess;
+		
+		Entry(RenderedResponse response, long expires, long lastAccess) {
+			this.response = response;
+			this.expires = expires;
+			this.weight = response.getWeight();
+			this.lastAccess = lastAccess;
+		}
+		
+		boolean isExpired(long now) {
+			return now - expires >= 0;
+		}
+	}
+
+}
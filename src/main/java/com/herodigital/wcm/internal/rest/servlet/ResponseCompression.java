@@ -0,0 +1,157 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Response compression settings and content negotiation.
+ * <p>
+ * Bodies smaller than the minimum size are sent uncompressed, compressing them costs more
+ * CPU than it saves in transfer. Instances are immutable and thread safe.
+ * 
+ * @author joelepps
+ *
+ */
+final class ResponseCompression {
+	
+	static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+	static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+	static final String HEADER_VARY = "Vary";
+	
+	private static final int BUFFER_SIZE = 8192;
+	
+	/**
+	 * Supported content codings, in order of preference.
+	 */
+	enum Encoding {
+		GZIP("gzip") {
+			@Override
+			OutputStream wrap(OutputStream out) throws IOException {
+				return new GZIPOutputStream(out, BUFFER_SIZE);
+			}
+		},
+		DEFLATE("deflate") {
+			@Override
+			OutputStream wrap(OutputStream out) throws IOException {
+				return new DeflaterOutputStream(out);
+			}
+		};
+		
+		private final String token;
+		
+		private Encoding(String token) {
+			this.token = token;
+		}
+		
+		String getToken() {
+			return token;
+		}
+		
+		/**
+		 * @param out stream receiving the compressed bytes, closed when the returned stream is closed
+		 * @return compressing stream
+		 */
+		abstract OutputStream wrap(OutputStream out) throws IOException;
+		
+		byte[] compress(byte[] body) throws IOException {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+			OutputStream compressed = wrap(out);
+			compressed.write(body);
+			compressed.close();
+			return out.toByteArray();
+		}
+	}
+	
+	private final boolean enabled;
+	private final int minSize;
+	
+	/**
+	 * @param enabled compress responses
+	 * @param minSize minimum body size in bytes to compress
+	 */
+	ResponseCompression(boolean enabled, int minSize) {
+		this.enabled = enabled;
+		this.minSize = Math.max(minSize, 0);
+	}
+	
+	boolean isEnabled() {
+		return enabled;
+	}
+	
+	int getMinSize() {
+		return minSize;
+	}
+	
+	/**
+	 * @param bodyLength body size in bytes
+	 * @return true if a body of this size is compressed for clients that accept it
+	 */
+	boolean isCompressible(int bodyLength) {
+		return enabled && bodyLength >= minSize;
+	}
+	
+	/**
+	 * Picks the encoding for a request. gzip is preferred over deflate if both are acceptable.
+	 * 
+	 * @param acceptEncoding Accept-Encoding header, may be null
+	 * @return encoding or null if the response should not be compressed
+	 */
+	Encoding negotiate(String acceptEncoding) {
+		if (!enabled || acceptEncoding == null) {
+			return null;
+		}
+		boolean gzip = false;
+		boolean gzipRefused = false;
+		boolean deflate = false;
+		boolean any = false;
+		
+		int length = acceptEncoding.length();
+		int start = 0;
+		while (start < length) {
+			int end = acceptEncoding.indexOf(',', start);
+			if (end < 0) {
+				end = length;
+			}
+			int paramStart = acceptEncoding.indexOf(';', start);
+			int tokenEnd = (paramStart < 0 || paramStart > end) ? end : paramStart;
+			String token = acceptEncoding.substring(start, tokenEnd).trim();
+			boolean accepted = tokenEnd == end || isAccepted(acceptEncoding, tokenEnd + 1, end);
+			
+			if (token.equalsIgnoreCase("gzip") || token.equalsIgnoreCase("x-gzip")) {
+				gzip = accepted;
+				gzipRefused = !accepted;
+			} else if (token.equalsIgnoreCase("deflate")) {
+				deflate = accepted;
+			} else if (token.equals("*")) {
+				any = accepted;
+			}
+			start = end + 1;
+		}
+		
+		if (gzip || (any && !gzipRefused)) {
+			return Encoding.GZIP;
+		} else if (deflate) {
+			return Encoding.DEFLATE;
+		}
+		return null;
+	}
+	
+	/*
+	 * False if the parameters contain a quality value of 0.
+	 */
+	private static boolean isAccepted(String header, int start, int end) {
+		String params = header.substring(start, end).trim();
+		if (!params.startsWith("q=") && !params.startsWith("Q=")) {
+			return true;
+		}
+		try {
+			return Double.parseDouble(params.substring(2).trim()) > 0;
+		} catch (NumberFormatException e) {
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+/**
+ * Turns the resource path of a request into the path used for the registry lookup.
+ * <p>
+ * In a single pass, without regular expressions, this:
+ * <ul>
+ * <li>strips a trailing selector and extension (example: {@code .ws.json}) by index</li>
+ * <li>collapses duplicate slashes</li>
+ * </ul>
+ * The resource path has already been URL decoded by the container, so percent encoded characters are left 
+ * as they are. Decoding again would let {@code %2541} reach a route as {@code A}, past filters that match 
+ * the decoded path.
+ * <p>
+ * The common case of a path that only needs its selector and extension stripped does not copy any characters.
+ * <p>
+ * Instances are immutable and thread safe.
+ *
+ * @author joelepps
+ *
+ */
+class RestPathNormalizer {
+
+	/*
+	 * ".selector.extension" for every configured combination
+	 */
+	private final String[] tails;
+
+	/**
+	 * @param selectors accepted selectors, example: ws
+	 * @param extensions accepted extensions, example: json
+	 */
+	RestPathNormalizer(String[] selectors, String[] extensions) {
+		this.tails = new String[selectors.length * extensions.length];
+		int i = 0;
+		for (String selector : selectors) {
+			for (String extension : extensions) {
+				tails[i++] = "." + selector + "." + extension;
+			}
+		}
+	}
+
+	/**
+	 * As of AEM 6 SP2 {@code request.getRequestPathInfo().getResourcePath()} in some cases returns a path with selector and extension.
+	 * <p>
+	 * Unclear if this is a bug or expected new behavior for a non-existing resource. In any case this method strips any trailing
+	 * selector and extension.
+	 *
+	 * @param rawPath resource path
+	 * @return normalized path, {@code rawPath} itself if nothing changed
+	 */
+	CharSequence normalize(String rawPath) {
+		int end = rawPath.length();
+		for (String tail : tails) {
+			if (rawPath.endsWith(tail)) {
+				end -= tail.length();
+				break;
+			}
+		}
+
+		int special = indexOfDoubleSlash(rawPath, end);
+		if (special == end) {
+			return (end == rawPath.length()) ? rawPath : new Prefix(rawPath, end);
+		}
+
+		StringBuilder sb = new StringBuilder(end);
+		sb.append(rawPath, 0, special);
+		for (int i = special; i < end; i++) {
+			char c = rawPath.charAt(i);
+			if (c != '/' || sb.length() == 0 || sb.charAt(sb.length() - 1) != '/') {
+				sb.append(c);
+			}
+		}
+		return sb;
+	}
+
+	/*
+	 * Offset of the first "//" before end, end if none.
+	 */
+	private static int indexOfDoubleSlash(String path, int end) {
+		for (int i = 0; i + 1 < end; i++) {
+			if (path.charAt(i) == '/' && path.charAt(i + 1) == '/') {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	/*
+	 * Leading part of a path, shares the characters of the original string.
+	 */
+	private static final class Prefix implements CharSequence {
+		private final String path;
+		private final int length;
+
+		Prefix(String path, int length) {
+			this.path = path;
+			this.length = length;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index >= length) {
+				throw new StringIndexOutOfBoundsException(index);
+			}
+			return path.charAt(index);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			if (end > length) {
+				throw new StringIndexOutOfBoundsException(end);
+			}
+			return path.substring(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return path.substring(0, length);
+		}
+	}
+
+}
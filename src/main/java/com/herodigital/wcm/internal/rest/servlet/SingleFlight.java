@@ -0,0 +1,78 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks in-flight requests so that identical concurrent requests can share one function invocation.
+ * <p>
+ * The first request for a key leads a {@link Flight} and invokes the function. Requests arriving 
+ * while it runs wait for the leader's {@link RenderedResponse}. Thread safe.
+ * 
+ * @author joelepps
+ *
+ */
+final class SingleFlight {
+	
+	private final ConcurrentHashMap<ResponseCache.Key, Flight> flights = new ConcurrentHashMap<>();
+	
+	/**
+	 * Start {@code flight} for {@code key} unless an identical request is already in flight. The caller 
+	 * must {@link #end(ResponseCache.Key, Flight)} a flight it started.
+	 * 
+	 * @param key request key
+	 * @param flight new flight led by the caller
+	 * @return null if {@code flight} was started, otherwise the flight in progress
+	 */
+	Flight begin(ResponseCache.Key key, Flight flight) {
+		return flights.putIfAbsent(key, flight);
+	}
+	
+	/**
+	 * Remove a started flight. Waiters still waiting get no response.
+	 * 
+	 * @param key request key
+	 * @param flight flight passed to {@link #begin(ResponseCache.Key, Flight)}
+	 */
+	void end(ResponseCache.Key key, Flight flight) {
+		flights.remove(key, flight);
+		flight.done.countDown();
+	}
+	
+	/**
+	 * @return number of requests in flight
+	 */
+	int size() {
+		return flights.size();
+	}
+	
+	static final class Flight {
+		
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile RenderedResponse response;
+		
+		/**
+		 * Publish the response of the leader to its waiters.
+		 * 
+		 * @param response rendered response
+		 */
+		void complete(RenderedResponse response) {
+			this.response = response;
+			done.countDown();
+		}
+		
+		/**
+		 * @param maxWaitMillis maximum milliseconds to wait
+		 * @return response of the leader, null if it failed or took too long
+		 * @throws InterruptedException
+		 */
+		RenderedResponse await(long maxWaitMillis) throws InterruptedException {
+			if (!done.await(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+				return null;
+			}
+			return response;
+		}
+	}
+
+}
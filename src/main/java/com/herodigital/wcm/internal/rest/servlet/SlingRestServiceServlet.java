@@ -1,189 +1,529 @@
 package com.herodigital.wcm.internal.rest.servlet;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.sling.SlingServlet;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.herodigital.wcm.internal.rest.metrics.RouteMetrics;
 import com.herodigital.wcm.internal.rest.registry.HttpMethod;
 import com.herodigital.wcm.internal.rest.registry.RestFunctionRegistry.ResolvedFunction;
-import com.herodigital.wcm.internal.rest.registry.RestOperation;
 import com.herodigital.wcm.internal.rest.service.SlingRestFunction;
 import com.herodigital.wcm.internal.rest.service.SlingRestService;
 import com.herodigital.wcm.internal.rest.service.SlingRestServiceException;
 import com.herodigital.wcm.internal.rest.service.RestFunctionRegistryService;
 import com.herodigital.wcm.internal.rest.service.RestFunctionRegistryService.FunctionMeta;
+import com.herodigital.wcm.internal.rest.service.RateLimiter;
 import com.herodigital.wcm.internal.rest.service.RestResponse;
+import com.herodigital.wcm.internal.rest.servlet.ResponseCompression.Encoding;
 
 /**
  * This servlet is essentially the "dispatcher" for all {@link SlingRestService} instances.
  * <p>
  * It routes requests to the appropriate {@link SlingRestFunction} methods and handles
- * the resulting JSON string or thrown {@link SlingRestServiceException}.
+ * the resulting {@link RestResponse}, JSON string, object or thrown {@link SlingRestServiceException}.
  * 
  * @author joelepps
  * @see SlingRestService
  */
 @SlingServlet(
-		metatype=false,
+		metatype=true,
 		resourceTypes="sling/servlet/default",
-		selectors=SlingRestServiceServlet.SELECTOR,
-		extensions=SlingRestServiceServlet.EXTENSION,
 		methods={"GET", "POST", "DELETE", "PUT"},
 		label="Sling REST Routing Servlet",
 		description="Routes REST service requests to the appropriate methods"
 )
+@Properties({
+	@Property(name = SlingRestServiceServlet.PROPERTY_SELECTORS, value = SlingRestServiceServlet.SELECTOR, cardinality = Integer.MAX_VALUE,
+			label = "Selectors", description = "Selectors of REST requests. Example: ws"),
+	@Property(name = SlingRestServiceServlet.PROPERTY_EXTENSIONS, value = SlingRestServiceServlet.EXTENSION, cardinality = Integer.MAX_VALUE,
+			label = "Extensions", description = "Extensions of REST requests. Example: json"),
+	@Property(name = SlingRestServiceServlet.PROPERTY_CACHE_SIZE, longValue = SlingRestServiceServlet.DEFAULT_CACHE_SIZE,
+			label = "Response cache size", description = "Maximum size in KB of the cached GET responses of functions with a cacheTtl"),
+	@Property(name = SlingRestServiceServlet.PROPERTY_COMPRESSION_ENABLED, boolValue = SlingRestServiceServlet.DEFAULT_COMPRESSION_ENABLED,
+			label = "Compression", description = "Compress responses with gzip or deflate for clients that accept it"),
+	@Property(name = SlingRestServiceServlet.PROPERTY_COMPRESSION_MIN_SIZE, intValue = SlingRestServiceServlet.DEFAULT_COMPRESSION_MIN_SIZE,
+			label = "Compression minimum size", description = "Minimum response size in bytes to compress"),
+	@Property(name = SlingRestServiceServlet.PROPERTY_ERROR_LOG_FULL_COUNT, intValue = SlingRestServiceServlet.DEFAULT_ERROR_LOG_FULL_COUNT,
+			label = "Error log full count", description = "Failures of the same route and exception type logged with stack trace before only summaries are logged. -1 to log all."),
+	@Property(name = SlingRestServiceServlet.PROPERTY_ERROR_LOG_INTERVAL, longValue = SlingRestServiceServlet.DEFAULT_ERROR_LOG_INTERVAL,
+			label = "Error log summary interval", description = "Seconds between summaries of throttled failures"),
+	@Property(name = SlingRestServiceServlet.PROPERTY_BATCH_PATH, value = SlingRestServiceServlet.DEFAULT_BATCH_PATH,
+			label = "Batch path", description = "Path of the batch endpoint, POST only, e.g. /system/sling-rest/batch. Empty disables it. "
+					+ "Batch operations bypass dispatcher and Sling filter rules per path and method, only enable it when those rules allow it."),
+	@Property(name = SlingRestServiceServlet.PROPERTY_BATCH_MAX_OPERATIONS, intValue = SlingRestServiceServlet.DEFAULT_BATCH_MAX_OPERATIONS,
+			label = "Batch maximum operations", description = "Maximum number of operations in one batch request"),
+})
 public class SlingRestServiceServlet extends SlingAllMethodsServlet {
 	
-	public static final String WILDCARD_ATTRIBUTE_PREFIX = "ws.";
+	public static final String WILDCARD_ATTRIBUTE_PREFIX = SlingRestService.WILDCARD_ATTRIBUTE_PREFIX;
 	public static final String SELECTOR = "ws";
 	public static final String EXTENSION = "json";
 	
+	static final String PROPERTY_SELECTORS = "sling.servlet.selectors";
+	static final String PROPERTY_EXTENSIONS = "sling.servlet.extensions";
+	static final String PROPERTY_CACHE_SIZE = "response.cache.size";
+	static final long DEFAULT_CACHE_SIZE = 16 * 1024;
+	static final String PROPERTY_COMPRESSION_ENABLED = "compression.enabled";
+	static final boolean DEFAULT_COMPRESSION_ENABLED = true;
+	static final String PROPERTY_COMPRESSION_MIN_SIZE = "compression.min.size";
+	static final int DEFAULT_COMPRESSION_MIN_SIZE = 1024;
+	static final String PROPERTY_ERROR_LOG_FULL_COUNT = "error.log.full.count";
+	static final int DEFAULT_ERROR_LOG_FULL_COUNT = 10;
+	static final String PROPERTY_ERROR_LOG_INTERVAL = "error.log.interval";
+	static final long DEFAULT_ERROR_LOG_INTERVAL = 60;
+	static final String PROPERTY_BATCH_PATH = "batch.path";
+	static final String DEFAULT_BATCH_PATH = "";
+	static final String PROPERTY_BATCH_MAX_OPERATIONS = "batch.max.operations";
+	static final int DEFAULT_BATCH_MAX_OPERATIONS = 50;
+	
 	private static final long serialVersionUID = -2519870152628179333L;
 	
+	private static final int STREAM_BUFFER_SIZE = 8192;
+	
+	private static final int SC_TOO_MANY_REQUESTS = 429;
+	
+	/*
+	 * Error log group of failed batch operations, their raw paths are not routes 
+	 */
+	private static final String BATCH_ROUTE = "batch";
+	
+	/*
+	 * Same JSON as a SlingRestServiceException, rendered once so rejecting a request costs next to nothing 
+	 */
+	private static final RenderedResponse TOO_MANY_REQUESTS = RenderedResponse.ofJson(SC_TOO_MANY_REQUESTS, 
+			new SlingRestServiceException.Builder(SlingRestServiceException.CATEGORY_UNAVAILABLE, "Too many requests, please try again later.")
+			.setHttpStatusCode(SC_TOO_MANY_REQUESTS)
+			.create()
+			.toJson());
+	
 	private static final Logger log = LoggerFactory.getLogger(SlingRestServiceServlet.class);
 	
 	@Reference
 	private RestFunctionRegistryService registryService;
 	
+	
+	private RestPathNormalizer pathNormalizer = new RestPathNormalizer(new String[]{SELECTOR}, new String[]{EXTENSION});
+	
+	private ResponseCache responseCache = new ResponseCache(DEFAULT_CACHE_SIZE * 1024);
+	
+	/*
+	 * Registry generation the response cache was filled under.
+	 */
+	private volatile long cacheGeneration;
+	
+	private final SingleFlight singleFlight = new SingleFlight();
+	
+	private ResponseCompression compression = new ResponseCompression(DEFAULT_COMPRESSION_ENABLED, DEFAULT_COMPRESSION_MIN_SIZE);
+	
+	private ThrottledErrorLog errorLog = new ThrottledErrorLog(log, DEFAULT_ERROR_LOG_FULL_COUNT, DEFAULT_ERROR_LOG_INTERVAL);
+	
+	private String batchPath = DEFAULT_BATCH_PATH;
+	
+	private int batchMaxOperations = DEFAULT_BATCH_MAX_OPERATIONS;
+	
+	@Activate
+	protected void activate(ComponentContext context) {
+		Dictionary<?, ?> properties = context.getProperties();
+		String[] selectors = PropertiesUtil.toStringArray(properties.get(PROPERTY_SELECTORS), new String[]{SELECTOR});
+		String[] extensions = PropertiesUtil.toStringArray(properties.get(PROPERTY_EXTENSIONS), new String[]{EXTENSION});
+		log.info("Serving REST requests with selectors {} and extensions {}", Arrays.toString(selectors), Arrays.toString(extensions));
+		pathNormalizer = new RestPathNormalizer(selectors, extensions);
+		responseCache = new ResponseCache(PropertiesUtil.toLong(properties.get(PROPERTY_CACHE_SIZE), DEFAULT_CACHE_SIZE) * 1024);
+		compression = new ResponseCompression(
+				PropertiesUtil.toBoolean(properties.get(PROPERTY_COMPRESSION_ENABLED), DEFAULT_COMPRESSION_ENABLED),
+				PropertiesUtil.toInteger(properties.get(PROPERTY_COMPRESSION_MIN_SIZE), DEFAULT_COMPRESSION_MIN_SIZE));
+		errorLog = new ThrottledErrorLog(log, 
+				PropertiesUtil.toInteger(properties.get(PROPERTY_ERROR_LOG_FULL_COUNT), DEFAULT_ERROR_LOG_FULL_COUNT),
+				PropertiesUtil.toLong(properties.get(PROPERTY_ERROR_LOG_INTERVAL), DEFAULT_ERROR_LOG_INTERVAL));
+		batchPath = PropertiesUtil.toString(properties.get(PROPERTY_BATCH_PATH), DEFAULT_BATCH_PATH);
+		batchMaxOperations = PropertiesUtil.toInteger(properties.get(PROPERTY_BATCH_MAX_OPERATIONS), DEFAULT_BATCH_MAX_OPERATIONS);
+	}
+	
+	/**
+	 * @return cache of GET responses
+	 */
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+	
 	@Override
 	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws ServletException, IOException {
-		boolean executed = doBase(HttpMethod.GET, request, response);
-		if (!executed) {
-			log.debug("Could not find REST operation {}", request.getPathInfo());
-			response.sendError(HttpServletResponse.SC_NOT_FOUND);
-		}
+		doBase(HttpMethod.GET, request, response);
 	}
 	
 	@Override
 	protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response) throws ServletException, IOException {
-		boolean executed = doBase(HttpMethod.POST, request, response);
-		if (!executed) {
-			log.debug("Could not find REST operation {}", request.getPathInfo());
-			response.sendError(HttpServletResponse.SC_NOT_FOUND);
-		}
+		doBase(HttpMethod.POST, request, response);
 	}
 
 	@Override
 	protected void doPut(SlingHttpServletRequest request, SlingHttpServletResponse response) throws ServletException, IOException {
-		boolean executed = doBase(HttpMethod.PUT, request, response);
-		if (!executed) {
-			log.debug("Could not find REST operation {}", request.getPathInfo());
-			response.sendError(HttpServletResponse.SC_NOT_FOUND);
-		}
+		doBase(HttpMethod.PUT, request, response);
 	}
 
 	@Override
 	protected void doDelete(SlingHttpServletRequest request, SlingHttpServletResponse response) throws ServletException, IOException {
-		boolean executed = doBase(HttpMethod.DELETE, request, response);
-		if (!executed) {
-			log.debug("Could not find REST operation {}", request.getPathInfo());
-			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+		doBase(HttpMethod.DELETE, request, response);
+	}
+	
+	private void doBase(final HttpMethod httpMethod, final SlingHttpServletRequest request, final SlingHttpServletResponse response) throws IOException {
+		CharSequence path = pathNormalizer.normalize(request.getRequestPathInfo().getResourcePath());
+		if (httpMethod == HttpMethod.POST && !batchPath.isEmpty() && batchPath.contentEquals(path)) {
+			doBatch(request, response);
+		} else {
+			execute(httpMethod, path, request, response);
 		}
 	}
 	
-	private boolean doBase(final HttpMethod httpMethod, final SlingHttpServletRequest request, final SlingHttpServletResponse response) throws IOException {
-		boolean executed = false;
-		
+	/*
+	 * Resolve and run a single REST operation, writing its response or error. 
+	 */
+	private void execute(HttpMethod httpMethod, CharSequence path, SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+		long start = System.nanoTime();
+		request.setAttribute(SlingRestService.ARRIVAL_ATTRIBUTE, System.currentTimeMillis());
+		RouteMetrics metrics = null;
+		long bytesWritten = 0;
 		try {
-			String path = request.getRequestPathInfo().getResourcePath();
-			path = cleanPath(path);
-			
-			RestOperation op = new RestOperation(httpMethod, path);
-			ResolvedFunction<FunctionMeta> foundFunction = registryService.getFunction(op);
+			ResolvedFunction<FunctionMeta> foundFunction = registryService.getFunction(httpMethod, path);
 			if (foundFunction != null) {
-				updateRequestWithAttributes(request, foundFunction.getWildcards());
-				
-				SlingRestService heroWebService = foundFunction.getFunction().getSlingRestService();
+				FunctionMeta functionMeta = foundFunction.getFunction();
+				metrics = functionMeta.getRouteMetrics();
 				
-				Object responseObj = invokeMethod(heroWebService, (String) foundFunction.getFunction().getJavaMethod(), request, response);
-				
-				// Evaluate response object. Supported types are RestResponse and String (typically JSON).
-				// String is included for backwards compatibility, RestResponse is preferred.
-				if (responseObj != null && responseObj instanceof RestResponse) {
-					writeJsonResponse(response, (RestResponse) responseObj);
-				} else if (responseObj != null && responseObj instanceof String) {
-					writeJsonResponse(response, new RestResponse.Builder((String) responseObj).create());
-				} else if (responseObj != null) {
-					throw new IllegalStateException("Unsupported return type of " + responseObj.getClass().getCanonicalName() + " for " + responseObj);
+				RateLimiter rateLimiter = functionMeta.getRateLimiter();
+				long retryAfterNanos = (rateLimiter == null) ? 0 : rateLimiter.tryAcquire(request);
+				if (retryAfterNanos > 0) {
+					metrics.recordError(SlingRestServiceException.CATEGORY_UNAVAILABLE);
+					bytesWritten = sendTooManyRequests(response, retryAfterNanos);
+				} else {
+					bytesWritten = dispatch(httpMethod, functionMeta, foundFunction, request, response);
 				}
-				
-				executed = true;
 			} else {
-				executed = false;
+				sendNotFound(httpMethod, path, request, response);
 			}
 		} catch (SlingRestServiceException e) {
-			// log non-validation exceptions
+			if (metrics != null) {
+				metrics.recordError(e.getErrorCategory());
+			}
+			if (response.isCommitted()) {
+				// failed while streaming the body, too late to send an error response
+				errorLog.error(routeOf(metrics), "Web service failure after response was committed: ", e);
+				return;
+			}
+			// log errors
 			// log validation exceptions if debug logging enabled
-			if (!SlingRestServiceException.CATEGORY_VALIDATION.equals(e.getErrorCategory()) || 
+			// log overload rejections (bulkheads) as a one line warning, they come in bursts
+			// repeated failures of a route are throttled
+			if (SlingRestServiceException.CATEGORY_UNAVAILABLE.equals(e.getErrorCategory())) {
+				errorLog.warn(routeOf(metrics), "Web service unavailable:", e);
+			} else if (!SlingRestServiceException.CATEGORY_VALIDATION.equals(e.getErrorCategory()) || 
 					(SlingRestServiceException.CATEGORY_VALIDATION.equals(e.getErrorCategory()) && log.isDebugEnabled()) ) {
-				log.error("Web service failure: ", e);
+				errorLog.error(routeOf(metrics), "Web service failure: ", e);
 			}
-			writeJsonResponse(response, e.toRestResponse());
-			executed = true;
+			bytesWritten = writeJsonResponse(request, response, e.toRestResponse(), null);
 		} catch (Exception e) {
-			log.error("Web service failure.", e);
+			if (metrics != null) {
+				metrics.recordError(RouteMetrics.CATEGORY_UNEXPECTED);
+			}
+			errorLog.error(routeOf(metrics), "Web service failure.", e);
+			if (response.isCommitted()) {
+				return; // failed while streaming the body, too late to send an error response
+			}
 			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Unexpected error occurred.");
-			executed = true;
+		} finally {
+			if (metrics != null) {
+				metrics.record(System.nanoTime() - start, bytesWritten);
+			}
+		}
+	}
+	
+	/*
+	 * Drop all cached responses once the registry has been rebuilt. Their functions may have been 
+	 * removed or replaced, and the entries would otherwise pin them until they are evicted.
+	 */
+	private void clearCacheIfRepublished() {
+		long generation = registryService.getGeneration();
+		if (generation != cacheGeneration) {
+			cacheGeneration = generation;
+			responseCache.clear();
+		}
+	}
+	
+	/*
+	 * Serve the request from the response cache or an identical in-flight request, or invoke the 
+	 * function and write its result. Returns the number of body bytes written.
+	 */
+	private long dispatch(HttpMethod httpMethod, FunctionMeta functionMeta, ResolvedFunction<FunctionMeta> foundFunction, 
+			SlingHttpServletRequest request, SlingHttpServletResponse response) throws Exception {
+		updateRequestWithAttributes(request, functionMeta, foundFunction);
+		clearCacheIfRepublished();
+		
+		boolean cacheable = functionMeta.getCacheTtlMillis() > 0;
+		boolean coalesced = functionMeta.getCoalesceWaitMillis() > 0;
+		ResponseCache.Key requestKey = null;
+		if (cacheable || coalesced) {
+			requestKey = ResponseCache.key(functionMeta, foundFunction, request);
+		}
+		if (cacheable) {
+			RenderedResponse cached = responseCache.get(requestKey);
+			if (cached != null) {
+				return writeRenderedResponse(request, response, cached);
+			}
+		}
+		
+		SingleFlight.Flight flight = null;
+		if (coalesced) {
+			flight = new SingleFlight.Flight();
+			SingleFlight.Flight inFlight = singleFlight.begin(requestKey, flight);
+			if (inFlight != null) {
+				RenderedResponse shared = inFlight.await(functionMeta.getCoalesceWaitMillis());
+				if (shared != null) {
+					return writeRenderedResponse(request, response, shared);
+				}
+				flight = null; // leader failed or is too slow, invoke without coalescing
+			}
+		}
+		
+		try {
+			Object responseObj = invokeFunction(functionMeta, request, response);
+			
+			// Evaluate response object. RestResponse and String (typically JSON) are written as is.
+			// String is included for backwards compatibility. Any other object is serialized to JSON.
+			RestResponse restResponse = null;
+			if (responseObj != null && responseObj instanceof RestResponse) {
+				restResponse = (RestResponse) responseObj;
+			} else if (responseObj != null && responseObj instanceof String) {
+				restResponse = new RestResponse.Builder((String) responseObj).create();
+			} else if (responseObj != null) {
+				restResponse = functionMeta.getSerializer().toRestResponse(responseObj, functionMeta.getReturnType());
+			}
+			
+			// only successful responses are shared, waiters of a failed leader invoke the function themselves
+			boolean success = restResponse != null && isSuccess(restResponse.getHttpStatus());
+			if (success && (cacheable || flight != null)) {
+				RenderedResponse rendered = RenderedResponse.render(restResponse, true);
+				if (cacheable) {
+					// the cache charges the weight once, compressed forms created later would not count
+					rendered.compressAll(compression);
+				}
+				if (flight != null) {
+					flight.complete(rendered); // before writing, so waiters do not wait on a slow client
+				}
+				long bytesWritten = writeRenderedResponse(request, response, rendered);
+				if (cacheable) {
+					responseCache.put(requestKey, rendered, functionMeta.getCacheTtlMillis());
+				}
+				return bytesWritten;
+			} else if (restResponse != null) {
+				return writeFunctionResponse(httpMethod, request, response, restResponse);
+			}
+			return 0;
+		} finally {
+			if (flight != null) {
+				singleFlight.end(requestKey, flight);
+			}
 		}
-		return executed;
 	}
 	
 	/*
-	 * As of AEM 6 SP2 {@code request.getRequestPathInfo().getResourcePath()} in some cases returns a path with selector and extension.
-	 * <p>
-	 * Unclear if this is a bug or expected new behavior for a non-existing resource. In any case this method strips any trailing
-	 * selector and extension.
+	 * Run the operations of a batch request one after another and write their responses in a JSON envelope, 
+	 * in request order. Operations run on the request thread because they share its resource resolver and 
+	 * JCR session, which must not be used by several threads at once.
 	 */
-	private String cleanPath(String rawPath) {
-		String tail = "." + SELECTOR + "." + EXTENSION;
-		String cleaned = rawPath;
-		if (rawPath.endsWith(tail)) {
-			cleaned = rawPath.replaceAll(tail+"$", "");
-			log.trace("Cleaned path {} -> {}", rawPath, cleaned);
+	private void doBatch(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+		List<BatchOperation> operations;
+		try {
+			operations = BatchOperation.parse(request.getReader(), batchMaxOperations);
+		} catch (SlingRestServiceException e) {
+			log.debug("Invalid batch request: {}", e.getMessage());
+			writeJsonResponse(request, response, e.toRestResponse(), null);
+			return;
+		}
+		
+		final BatchItemResponse[] results = new BatchItemResponse[operations.size()];
+		for (int i = 0; i < results.length; i++) {
+			BatchOperation operation = operations.get(i);
+			results[i] = new BatchItemResponse(response);
+			executeBatchItem(operation, new BatchItemRequest(request, operation), results[i]);
+		}
+		
+		writeJsonResponse(request, response, new RestResponse.Builder(new RestResponse.BodyWriter() {
+			@Override
+			public void writeTo(Writer writer) throws IOException {
+				writer.write("{\"responses\":[");
+				for (int i = 0; i < results.length; i++) {
+					if (i > 0) {
+						writer.write(',');
+					}
+					results[i].writeJsonTo(writer);
+				}
+				writer.write("]}");
+			}
+		}).create(), null);
+	}
+	
+	/*
+	 * A failing operation becomes a 500 item, the other operations still run.
+	 */
+	private void executeBatchItem(BatchOperation operation, BatchItemRequest itemRequest, BatchItemResponse itemResponse) {
+		try {
+			CharSequence path = pathNormalizer.normalize(operation.getOperation().getPath());
+			execute(operation.getOperation().getMethod(), path, itemRequest, itemResponse);
+		} catch (Exception e) {
+			errorLog.error(BATCH_ROUTE, "Batch operation " + operation.getOperation() + " failed.", e);
+			itemResponse.reset();
+			itemResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 		}
-		return cleaned;
 	}
 	
-	private void updateRequestWithAttributes(SlingHttpServletRequest request, Map<String, String> attributes) {
-		for (Entry<String, String> attr : attributes.entrySet()) {
-			request.setAttribute(WILDCARD_ATTRIBUTE_PREFIX + attr.getKey(), attr.getValue());
+	/*
+	 * 405 with an Allow header if the path is registered for other methods, 404 otherwise.
+	 */
+	private void sendNotFound(HttpMethod httpMethod, CharSequence path, SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+		Set<HttpMethod> allowedMethods = registryService.getAllowedMethods(path);
+		if (allowedMethods.isEmpty()) {
+			log.debug("Could not find REST operation {}", request.getPathInfo());
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+		} else {
+			log.debug("REST operation {} does not support {}", request.getPathInfo(), httpMethod);
+			StringBuilder allow = new StringBuilder();
+			for (HttpMethod allowedMethod : allowedMethods) {
+				if (allow.length() > 0) {
+					allow.append(", ");
+				}
+				allow.append(allowedMethod);
+			}
+			response.setHeader("Allow", allow.toString());
+			response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+		}
+	}
+	
+	private long sendTooManyRequests(SlingHttpServletResponse response, long retryAfterNanos) throws IOException {
+		long retryAfterSeconds = Math.max(1, (retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+		response.setHeader("Retry-After", Long.toString(retryAfterSeconds));
+		return TOO_MANY_REQUESTS.writeTo(response, compression, null);
+	}
+	
+	private static String routeOf(RouteMetrics metrics) {
+		return (metrics == null) ? null : metrics.getRoute();
+	}
+	
+	private static boolean isSuccess(int httpStatus) {
+		return httpStatus >= 200 && httpStatus < 300;
+	}
+	
+	/*
+	 * Attribute names are precomputed per function, wildcard values are bound by position. 
+	 * Typed wildcards are bound as the value converted during the lookup.
+	 */
+	private void updateRequestWithAttributes(SlingHttpServletRequest request, FunctionMeta functionMeta, ResolvedFunction<FunctionMeta> foundFunction) {
+		String[] attributeNames = functionMeta.getWildcardAttributeNames();
+		int count = Math.min(attributeNames.length, foundFunction.getWildcardCount());
+		for (int i = 0; i < count; i++) {
+			request.setAttribute(attributeNames[i], foundFunction.getTypedWildcardValue(i));
 		}
 	}
 
-	protected Object invokeMethod(Object o, String name, Object... args) throws SlingRestServiceException, Exception {
-		try {
-			Method m = o.getClass().getMethod(name, SlingHttpServletRequest.class, SlingHttpServletResponse.class);
-			return m.invoke(o, args);
-		} catch (InvocationTargetException e) {
-			if (e.getTargetException() != null) {
-				throw (Exception) e.getTargetException();
-			} else {
-				throw e;
+	protected Object invokeFunction(FunctionMeta functionMeta, SlingHttpServletRequest request, SlingHttpServletResponse response) throws SlingRestServiceException, Exception {
+		return functionMeta.getInvoker().invoke(request, response);
+	}
+	
+	/*
+	 * Successful GET responses get an ETag and are answered with 304 if the client has that version. 
+	 * A version token supplied by the function is checked before its body is produced. Otherwise 
+	 * the ETag is a hash of the body, computed only for bodies that are not streamed.
+	 */
+	private long writeFunctionResponse(HttpMethod httpMethod, SlingHttpServletRequest request, SlingHttpServletResponse response, RestResponse restResponse) throws IOException {
+		if (httpMethod != HttpMethod.GET || !isSuccess(restResponse.getHttpStatus())) {
+			return writeJsonResponse(request, response, restResponse, null);
+		} else if (restResponse.getETag() != null) {
+			String eTag = EntityTags.format(restResponse.getETag());
+			if (EntityTags.matches(request.getHeader(EntityTags.HEADER_IF_NONE_MATCH), eTag)) {
+				sendNotModified(response, eTag);
+				return 0;
 			}
+			return writeJsonResponse(request, response, restResponse, eTag);
+		} else if (restResponse.getBodyWriter() == null) {
+			return writeRenderedResponse(request, response, RenderedResponse.render(restResponse, true));
+		}
+		return writeJsonResponse(request, response, restResponse, null);
+	}
+	
+	private long writeRenderedResponse(SlingHttpServletRequest request, SlingHttpServletResponse response, RenderedResponse rendered) throws IOException {
+		if (EntityTags.matches(request.getHeader(EntityTags.HEADER_IF_NONE_MATCH), rendered.getETag())) {
+			sendNotModified(response, rendered.getETag());
+			return 0;
 		}
+		return rendered.writeTo(response, compression, compression.negotiate(request.getHeader(ResponseCompression.HEADER_ACCEPT_ENCODING)));
 	}
 	
-	private void writeJsonResponse(SlingHttpServletResponse response, RestResponse restResponse) throws IOException {
+	private void sendNotModified(SlingHttpServletResponse response, String eTag) {
+		response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		response.setHeader(EntityTags.HEADER_ETAG, eTag);
+	}
+	
+	/*
+	 * JSON strings are encoded first so their size is known. Streamed bodies are compressed once 
+	 * they reach the minimum size. Returns the number of body bytes written.
+	 */
+	private long writeJsonResponse(SlingHttpServletRequest request, SlingHttpServletResponse response, RestResponse restResponse, String eTag) throws IOException {
+		Encoding encoding = compression.negotiate(request.getHeader(ResponseCompression.HEADER_ACCEPT_ENCODING));
+		if (restResponse.getBodyWriter() == null) {
+			RenderedResponse rendered = RenderedResponse.render(restResponse, false);
+			if (eTag != null) {
+				boolean compressed = encoding != null && compression.isCompressible(rendered.getBody().length);
+				response.setHeader(EntityTags.HEADER_ETAG, compressed ? EntityTags.weak(eTag) : eTag);
+			}
+			return rendered.writeTo(response, compression, encoding);
+		}
+		
+		// headers must be set before the first byte of a streamed body
 		response.setStatus(restResponse.getHttpStatus());
 		response.setContentType(restResponse.getContentType());
 		response.setCharacterEncoding(restResponse.getCharSet());
-		PrintWriter pw = response.getWriter();
-		pw.print(restResponse.getJson());
-		pw.close();
+		if (compression.isEnabled()) {
+			response.setHeader(ResponseCompression.HEADER_VARY, ResponseCompression.HEADER_ACCEPT_ENCODING);
+		}
+		if (eTag != null) {
+			response.setHeader(EntityTags.HEADER_ETAG, eTag); // replaced by a weak ETag if compressed
+		}
+		CountingOutputStream counted = new CountingOutputStream(response.getOutputStream());
+		OutputStream out = (encoding == null) ? counted : new CompressingOutputStream(response, counted, encoding, compression.getMinSize(), eTag);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, restResponse.getCharSet()), STREAM_BUFFER_SIZE);
+		try {
+			restResponse.getBodyWriter().writeTo(writer);
+			writer.close();
+		} catch (IOException | RuntimeException e) {
+			// drop the partial body and its ETag, Vary and Content-Encoding headers, so an error
+			// response sent instead is not appended to them
+			if (!response.isCommitted()) {
+				response.reset();
+			}
+			throw e;
+		}
+		return counted.getCount();
 	}
 	
 }
@@ -0,0 +1,212 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+import com.herodigital.wcm.internal.rest.service.SlingRestServiceException;
+
+/**
+ * Error log that deduplicates repeated failures so an outage does not flood the log.
+ * <p>
+ * Failures are grouped by route and exception type name (the chained exception of a {@link SlingRestServiceException}). 
+ * The first occurrences of a group are logged in full. After that, occurrences are counted and a single summary line 
+ * is logged at most once per interval, with the next occurrence. A group that has been quiet for an interval starts 
+ * over, so a new incident is logged in full again. Quiet groups are dropped at most once per interval, so routes and 
+ * exception types of removed services are not kept.
+ * <p>
+ * Counters are updated with atomic operations only. Nothing is done unless a failure is logged.
+ * 
+ * @author joelepps
+ *
+ */
+final class ThrottledErrorLog {
+	
+	/**
+	 * {@link #record(String, Throwable, long)} result: log the occurrence in full.
+	 */
+	static final long LOG = -1;
+	
+	/**
+	 * {@link #record(String, Throwable, long)} result: do not log the occurrence.
+	 */
+	static final long SUPPRESS = 0;
+	
+	private static final int MAX_GROUPS = 1000;
+	
+	private final Logger log;
+	private final int fullCount;
+	private final long intervalNanos;
+	private final ConcurrentHashMap<Group, Counter> counters = new ConcurrentHashMap<>();
+	private final Counter overflow;
+	private final AtomicLong lastSweep;
+	
+	/**
+	 * @param log logger
+	 * @param fullCount occurrences of a group logged in full, a negative value to log all occurrences
+	 * @param intervalSeconds seconds between summaries of a group
+	 */
+	ThrottledErrorLog(Logger log, int fullCount, long intervalSeconds) {
+		this.log = log;
+		this.fullCount = fullCount;
+		this.intervalNanos = TimeUnit.SECONDS.toNanos(intervalSeconds);
+		this.overflow = new Counter(System.nanoTime());
+		this.lastSweep = new AtomicLong(System.nanoTime());
+	}
+	
+	/**
+	 * Log a failure with its stack trace, unless throttled.
+	 * 
+	 * @param route route of the failed request or null
+	 * @param message message
+	 * @param t failure
+	 */
+	void error(String route, String message, Throwable t) {
+		long decision = record(route, t, System.nanoTime());
+		if (decision == LOG) {
+			log.error(message, t);
+		} else if (decision > 0) {
+			log.error(summary(route, message, t, decision));
+		}
+	}
+	
+	/**
+	 * Log a failure on a single line without stack trace, unless throttled.
+	 * 
+	 * @param route route of the failed request or null
+	 * @param message message
+	 * @param t failure
+	 */
+	void warn(String route, String message, Throwable t) {
+		long decision = record(route, t, System.nanoTime());
+		if (decision == LOG) {
+			log.warn("{} {}", message, t.getMessage());
+		} else if (decision > 0) {
+			log.warn(summary(route, message, t, decision));
+		}
+	}
+	
+	/**
+	 * @param route route or null
+	 * @param t failure
+	 * @param now current {@link System#nanoTime()}
+	 * @return {@link #LOG}, {@link #SUPPRESS} or the number of occurrences to report in a summary
+	 */
+	long record(String route, Throwable t, long now) {
+		if (fullCount < 0) {
+			return LOG;
+		}
+		long last = lastSweep.get();
+		if (now - last >= intervalNanos && lastSweep.compareAndSet(last, now)) {
+			sweep(now);
+		}
+		Group group = new Group(route, typeOf(t).getName());
+		Counter counter = counters.get(group);
+		if (counter == null) {
+			if (counters.size() >= MAX_GROUPS) {
+				counter = overflow;
+			} else {
+				Counter newCounter = new Counter(now);
+				counter = counters.putIfAbsent(group, newCounter);
+				if (counter == null) {
+					counter = newCounter;
+				}
+			}
+		}
+		return counter.record(now, fullCount, intervalNanos);
+	}
+	
+	/*
+	 * Drop the groups quiet for an interval, they would start over anyway. A thread still holding a 
+	 * dropped counter may lose an occurrence, which only affects the counts in a summary.
+	 */
+	private void sweep(long now) {
+		for (Map.Entry<Group, Counter> entry : counters.entrySet()) {
+			if (entry.getValue().isQuiet(now, intervalNanos)) {
+				counters.remove(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+	
+	/**
+	 * @return number of groups with their own counter
+	 */
+	int getGroupCount() {
+		return counters.size();
+	}
+	
+	private String summary(String route, String message, Throwable t, long suppressed) {
+		return message + " " + suppressed + " similar failures (" + typeOf(t).getName() + ") on " + ((route == null) ? "unknown route" : route) 
+				+ " were not logged in the last " + TimeUnit.NANOSECONDS.toSeconds(intervalNanos) + " s. Latest: " + t.getMessage();
+	}
+	
+	private static Class<?> typeOf(Throwable t) {
+		if (t instanceof SlingRestServiceException && ((SlingRestServiceException) t).getException() != null) {
+			return ((SlingRestServiceException) t).getException().getClass();
+		}
+		return t.getClass();
+	}
+	
+	private static final class Counter {
+		private final AtomicLong occurrences = new AtomicLong();
+		private final AtomicLong suppressed = new AtomicLong();
+		private final AtomicLong lastReport;
+		private final AtomicLong lastSeen;
+		
+		Counter(long now) {
+			this.lastReport = new AtomicLong(now);
+			this.lastSeen = new AtomicLong(now);
+		}
+		
+		boolean isQuiet(long now, long intervalNanos) {
+			return now - lastSeen.get() > intervalNanos;
+		}
+		
+		long record(long now, int fullCount, long intervalNanos) {
+			long seen = lastSeen.getAndSet(now);
+			if (now - seen > intervalNanos) {
+				// quiet for an interval, a new incident. Racing threads may both reset, either way it starts over.
+				occurrences.set(0);
+				suppressed.set(0);
+				lastReport.set(now);
+			}
+			if (occurrences.incrementAndGet() <= fullCount) {
+				return LOG;
+			}
+			suppressed.incrementAndGet();
+			long last = lastReport.get();
+			if (now - last >= intervalNanos && lastReport.compareAndSet(last, now)) {
+				return suppressed.getAndSet(0);
+			}
+			return SUPPRESS;
+		}
+	}
+	
+	private static final class Group {
+		private final String route;
+		private final String type;
+		
+		Group(String route, String type) {
+			this.route = (route == null) ? "" : route;
+			this.type = type;
+		}
+		
+		@Override
+		public int hashCode() {
+			return route.hashCode() * 31 + type.hashCode();
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Group)) {
+				return false;
+			}
+			Group other = (Group) obj;
+			return type.equals(other.type) && route.equals(other.route);
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.herodigital.wcm.internal.rest.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+	
+	public LatencyHistogram sut;
+	
+	@Before
+	public void before() {
+		this.sut = new LatencyHistogram();
+	}
+	
+	@Test
+	public void testBuckets() {
+		for (long micros = 0; micros < 1000000; micros++) {
+			int bucket = LatencyHistogram.bucket(micros);
+			assertTrue(micros <= LatencyHistogram.upperBound(bucket));
+			assertTrue(bucket == 0 || micros > LatencyHistogram.upperBound(bucket - 1));
+		}
+		assertEquals(159, LatencyHistogram.bucket(Long.MAX_VALUE));
+	}
+	
+	@Test
+	public void testPercentiles() {
+		assertEquals(0, sut.getPercentileMicros(50));
+		
+		for (int i = 1; i <= 100; i++) {
+			sut.record(TimeUnit.MILLISECONDS.toNanos(i));
+		}
+		
+		assertWithin(50000, sut.getPercentileMicros(50));
+		assertWithin(99000, sut.getPercentileMicros(99));
+		assertEquals(100000, sut.getPercentileMicros(100));
+		assertEquals(100000, sut.getMaxMicros());
+		assertEquals(5050000, sut.getSumMicros());
+		
+		sut.reset();
+		assertEquals(0, sut.getMaxMicros());
+		assertEquals(0, sut.getPercentileMicros(99));
+	}
+	
+	/*
+	 * Bucket resolution is 25%
+	 */
+	private static void assertWithin(long expected, long actual) {
+		assertTrue(actual + " not within 25% of " + expected, actual >= expected && actual <= expected * 1.25);
+	}
+
+}
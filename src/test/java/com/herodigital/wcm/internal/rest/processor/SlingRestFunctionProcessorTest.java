@@ -0,0 +1,146 @@
+package com.herodigital.wcm.internal.rest.processor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.internal.$Gson$Types;
+import com.herodigital.wcm.internal.rest.service.SlingRestRouteIndex;
+import com.herodigital.wcm.internal.rest.service.SlingRestRouteIndex.Route;
+import com.herodigital.wcm.internal.rest.service.SlingRestService;
+
+public class SlingRestFunctionProcessorTest {
+
+	private static final String IMPORTS = "package example;\n"
+			+ "import java.util.*;\n"
+			+ "import org.apache.sling.api.*;\n"
+			+ "import com.herodigital.wcm.internal.rest.service.*;\n";
+
+	private File outputDir;
+	private DiagnosticCollector<JavaFileObject> diagnostics;
+
+	@Before
+	public void setUp() throws IOException {
+		Assume.assumeNotNull(ToolProvider.getSystemJavaCompiler());
+		outputDir = Files.createTempDirectory("sling-rest-apt").toFile();
+		diagnostics = new DiagnosticCollector<>();
+	}
+
+	@Test
+	public void testGeneratesRouteIndex() throws Exception {
+		boolean compiled = compile("UserService", IMPORTS
+				+ "@SlingRestBulkhead(maxConcurrent = 4)\n"
+				+ "public class UserService implements SlingRestService {\n"
+				+ "  @SlingRestFunction(value = {\"GET:/api/user/{id:long}/roles\", \"GET:/api/users/{id:long}/roles\"}, cacheTtl = 60, cacheVaryHeaders = \"Accept-Language\")\n"
+				+ "  public List<String> roles(SlingHttpServletRequest request, SlingHttpServletResponse response) {\n"
+				+ "    return Arrays.asList(\"admin\");\n"
+				+ "  }\n"
+				+ "  @SlingRestFunction(\"POST:/api/user\") @SlingRestBulkhead(timeout = 500)\n"
+				+ "  public void create(SlingHttpServletRequest request, SlingHttpServletResponse response) throws java.io.IOException {\n"
+				+ "  }\n"
+				+ "}\n");
+		assertTrue(diagnostics.getDiagnostics().toString(), compiled);
+
+		try (URLClassLoader loader = new URLClassLoader(new URL[]{outputDir.toURI().toURL()}, getClass().getClassLoader())) {
+			Class<?> serviceClass = loader.loadClass("example.UserService");
+			SlingRestService service = (SlingRestService) serviceClass.newInstance();
+			SlingRestRouteIndex index = (SlingRestRouteIndex) loader.loadClass("example.UserService" + SlingRestRouteIndex.CLASS_SUFFIX).newInstance();
+
+			assertEquals(4, index.getBulkhead().maxConcurrent());
+			List<Route> routes = index.getRoutes(service);
+			assertEquals(2, routes.size());
+
+			Route roles = routes.get(0);
+			assertEquals("roles", roles.getJavaMethod());
+			assertArrayEquals(new String[]{"GET:/api/user/{id:long}/roles", "GET:/api/users/{id:long}/roles"}, roles.getFunction().value());
+			assertEquals(60, roles.getFunction().cacheTtl());
+			assertArrayEquals(new String[]{"Accept-Language"}, roles.getFunction().cacheVaryHeaders());
+			assertEquals(0, roles.getFunction().rateLimit(), 0);
+			assertNull(roles.getBulkhead());
+			assertTrue($Gson$Types.equals(serviceClass.getMethod("roles", SlingHttpServletRequest.class, SlingHttpServletResponse.class).getGenericReturnType(),
+					roles.getReturnType()));
+			assertEquals(Arrays.asList("admin"), roles.getInvoker().invoke(null, null));
+
+			Route create = routes.get(1);
+			assertEquals(500, create.getBulkhead().timeout());
+			assertEquals(void.class, create.getReturnType());
+			assertNull(create.getInvoker().invoke(null, null));
+		}
+	}
+
+	@Test
+	public void testRejectsInvalidFunctions() throws Exception {
+		boolean compiled = compile("BadService", IMPORTS
+				+ "public class BadService implements SlingRestService {\n"
+				+ "  @SlingRestFunction(\"GET:/api/item/{id}\")\n"
+				+ "  public String a(SlingHttpServletRequest request, SlingHttpServletResponse response) { return null; }\n"
+				+ "  @SlingRestFunction(\"GET:/api/item/{key}\")\n"
+				+ "  public String b(SlingHttpServletRequest request, SlingHttpServletResponse response) { return null; }\n"
+				+ "  @SlingRestFunction(\"GET:/api/order/{id:[a-z}\")\n"
+				+ "  public String c(SlingHttpServletRequest request, SlingHttpServletResponse response) { return null; }\n"
+				+ "  @SlingRestFunction(\"FETCH:/api/order\")\n"
+				+ "  public String d(SlingHttpServletRequest request, SlingHttpServletResponse response) { return null; }\n"
+				+ "  @SlingRestFunction(\"GET:/api/order\")\n"
+				+ "  public String e(SlingHttpServletRequest request) { return null; }\n"
+				+ "  @SlingRestFunction(\"GET:/api/order/all\")\n"
+				+ "  String f(SlingHttpServletRequest request, SlingHttpServletResponse response) { return null; }\n"
+				+ "}\n");
+		assertFalse(compiled);
+
+		List<String> errors = new ArrayList<>();
+		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+			if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+				errors.add(diagnostic.getLineNumber() + ": " + diagnostic.getMessage(Locale.ROOT));
+			}
+		}
+		assertEquals(errors.toString(), 5, errors.size());
+		assertTrue(errors.get(0), errors.get(0).startsWith("8: Route GET:/api/item/{key} of b conflicts with route GET:/api/item/{id} of a"));
+		assertTrue(errors.get(1), errors.get(1).startsWith("10: Invalid route GET:/api/order/{id:[a-z}"));
+		assertTrue(errors.get(2), errors.get(2).startsWith("12: Invalid route FETCH:/api/order"));
+		assertTrue(errors.get(3), errors.get(3).startsWith("15: REST functions must have a parameter signature"));
+		assertTrue(errors.get(4), errors.get(4).startsWith("17: REST functions must be public"));
+		assertFalse(new File(outputDir, "example/BadService" + SlingRestRouteIndex.CLASS_SUFFIX + ".class").exists());
+	}
+
+	private boolean compile(String className, final String source) {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///example/" + className + ".java"), JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-d", outputDir.getPath(), "-s", outputDir.getPath());
+		JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics, options, null, Collections.singletonList(file));
+		task.setProcessors(Collections.singletonList(new SlingRestFunctionProcessor()));
+		return task.call();
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.herodigital.wcm.internal.rest.registry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.herodigital.wcm.internal.rest.registry.RestFunctionRegistry.ResolvedFunction;
+
+/**
+ * Runs all {@link RestFunctionRegistryTrieTest} cases against {@link CachingRestFunctionRegistry}. Every lookup
+ * is done twice, the second one is answered from the cache.
+ */
+public class CachingRestFunctionRegistryTest extends RestFunctionRegistryTrieTest {
+
+	private static class CachingRegistry<T> implements RestFunctionRegistry<T> {
+
+		private final RestFunctionRegistryTrie<T> trie = new RestFunctionRegistryTrie<>();
+		private CachingRestFunctionRegistry<T> cached = new CachingRestFunctionRegistry<>(trie.freeze(), 1000);
+
+		@Override
+		public ResolvedFunction<T> getFunction(RestOperation operation) {
+			ResolvedFunction<T> result = cached.getFunction(operation);
+			if (result != null) {
+				assertSame(result, cached.getFunction(operation));
+			}
+			return result;
+		}
+
+		@Override
+		public ResolvedFunction<T> getFunction(HttpMethod method, CharSequence path) {
+			ResolvedFunction<T> result = cached.getFunction(method, path);
+			if (result != null) {
+				assertSame(result, cached.getFunction(method, new StringBuilder(path)));
+			}
+			return result;
+		}
+
+		@Override
+		public Set<HttpMethod> getAllowedMethods(CharSequence path) {
+			return cached.getAllowedMethods(path);
+		}
+
+		@Override
+		public void addFunction(RestOperation operation, T function) {
+			trie.addFunction(operation, function);
+			cached = new CachingRestFunctionRegistry<>(trie.freeze(), 1000);
+		}
+
+		@Override
+		public void clear() {
+			trie.clear();
+			cached = new CachingRestFunctionRegistry<>(trie.freeze(), 1000);
+		}
+
+	}
+
+	@Before
+	@Override
+	public void before() {
+		this.sut = new CachingRegistry<>();
+	}
+
+	@Test
+	public void testMethodIsPartOfKey() {
+		RestFunctionRegistryTrie<String> trie = new RestFunctionRegistryTrie<>();
+		trie.addFunction(new RestOperation(HttpMethod.GET, "/api/user/{id}"), "get");
+		trie.addFunction(new RestOperation(HttpMethod.DELETE, "/api/user/{id}"), "delete");
+		CachingRestFunctionRegistry<String> cached = new CachingRestFunctionRegistry<>(trie.freeze(), 10);
+
+		assertEquals("get", cached.getFunction(HttpMethod.GET, "/api/user/1").getFunction());
+		assertEquals("delete", cached.getFunction(HttpMethod.DELETE, "/api/user/1").getFunction());
+		assertNull(cached.getFunction(HttpMethod.POST, "/api/user/1"));
+		assertEquals(2, cached.getSize());
+	}
+
+	@Test
+	public void testEvictsLeastFrequentlyUsed() {
+		RestFunctionRegistryTrie<String> trie = new RestFunctionRegistryTrie<>();
+		trie.addFunction(new RestOperation(HttpMethod.GET, "/api/user/{id}"), "user");
+		CachingRestFunctionRegistry<String> cached = new CachingRestFunctionRegistry<>(trie.freeze(), 8);
+
+		ResolvedFunction<String> hot = cached.getFunction(HttpMethod.GET, "/api/user/hot");
+		for (int i = 0; i < 1000; i++) {
+			assertSame(hot, cached.getFunction(HttpMethod.GET, "/api/user/hot"));
+			assertEquals("user", cached.getFunction(HttpMethod.GET, "/api/user/" + i).getFunction());
+			assertEquals(Integer.toString(i), cached.getFunction(HttpMethod.GET, "/api/user/" + i).getWildcardValue(0));
+		}
+		assertEquals(8, cached.getSize());
+		assertSame(hot, cached.getFunction(HttpMethod.GET, "/api/user/hot"));
+	}
+
+}
@@ -0,0 +1,87 @@
+package com.herodigital.wcm.internal.rest.registry;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs all {@link RestFunctionRegistryTrieTest} cases against {@link RestFunctionRegistryCompiledTrie}. 
+ * Functions are added to a {@link RestFunctionRegistryTrie} which is frozen before every lookup.
+ */
+public class RestFunctionRegistryCompiledTrieTest extends RestFunctionRegistryTrieTest {
+	
+	private static class FreezingRegistry<T> implements RestFunctionRegistry<T> {
+		
+		private final RestFunctionRegistryTrie<T> trie = new RestFunctionRegistryTrie<>();
+
+		@Override
+		public ResolvedFunction<T> getFunction(RestOperation operation) {
+			return trie.freeze().getFunction(operation);
+		}
+
+		@Override
+		public ResolvedFunction<T> getFunction(HttpMethod method, CharSequence path) {
+			return trie.freeze().getFunction(method, path);
+		}
+
+		@Override
+		public Set<HttpMethod> getAllowedMethods(CharSequence path) {
+			return trie.freeze().getAllowedMethods(path);
+		}
+
+		@Override
+		public void addFunction(RestOperation operation, T function) {
+			trie.addFunction(operation, function);
+		}
+
+		@Override
+		public void clear() {
+			trie.clear();
+		}
+		
+		@Override
+		public String toString() {
+			return trie.freeze().toString();
+		}
+		
+	}
+	
+	@Before
+	@Override
+	public void before() {
+		this.sut = new FreezingRegistry<>();
+	}
+	
+	@Test
+	public void testFreezeIsSnapshot() {
+		RestFunctionRegistryTrie<String> trie = new RestFunctionRegistryTrie<>();
+		trie.addFunction(new RestOperation(HttpMethod.GET, "/api/op1"), "op1");
+		RestFunctionRegistryCompiledTrie<String> compiled = trie.freeze();
+		trie.addFunction(new RestOperation(HttpMethod.GET, "/api/op2"), "op2");
+		
+		assertEquals("op1", compiled.getFunction(HttpMethod.GET, "/api/op1").getFunction());
+		assertEquals(null, 	compiled.getFunction(HttpMethod.GET, "/api/op2"));
+	}
+	
+	@Test
+	public void testGetManyChildren() {
+		RestFunctionRegistryTrie<String> trie = new RestFunctionRegistryTrie<>();
+		for (int i = 0; i < 100; i++) {
+			trie.addFunction(new RestOperation(HttpMethod.GET, "/api/op" + i), "op" + i);
+		}
+		RestFunctionRegistryCompiledTrie<String> compiled = trie.freeze();
+		for (int i = 0; i < 100; i++) {
+			assertEquals("op" + i, compiled.getFunction(HttpMethod.GET, "/api/op" + i).getFunction());
+		}
+		assertEquals(null, compiled.getFunction(HttpMethod.GET, "/api/op100"));
+	}
+	
+	@Test(expected=UnsupportedOperationException.class)
+	public void testAddUnsupported() {
+		new RestFunctionRegistryTrie<String>().freeze().addFunction(new RestOperation(HttpMethod.GET, "/api/op1"), "op1");
+	}
+
+}
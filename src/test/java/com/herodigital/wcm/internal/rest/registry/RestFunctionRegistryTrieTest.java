@@ -2,6 +2,9 @@ package com.herodigital.wcm.internal.rest.registry;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.EnumSet;
+import java.util.UUID;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -71,6 +74,18 @@ public class RestFunctionRegistryTrieTest {
 		assertEquals("delete", 	sut.getFunction(opDelete).getFunction());
 		assertEquals("put", 	sut.getFunction(opPut).getFunction());
 	}
+	
+	@Test
+	public void testGetAllowedMethods() {
+		sut.addFunction(new RestOperation(HttpMethod.GET, 	"/api/user/{id}"), "get");
+		sut.addFunction(new RestOperation(HttpMethod.PUT, 	"/api/user/{id}"), "put");
+		sut.addFunction(new RestOperation(HttpMethod.POST, 	"/api/user/register"), "post");
+		
+		assertEquals(EnumSet.of(HttpMethod.GET, HttpMethod.PUT), 	sut.getAllowedMethods("/api/user/123"));
+		assertEquals(EnumSet.allOf(HttpMethod.class).size() - 1, 	sut.getAllowedMethods("/api/user/register").size());
+		assertEquals(EnumSet.noneOf(HttpMethod.class), 				sut.getAllowedMethods("/api/other"));
+		assertEquals(null, sut.getFunction(HttpMethod.DELETE, "/api/user/123"));
+	}
 
 	@Test
 	public void testGetAddBasic() {
@@ -213,6 +228,150 @@ public class RestFunctionRegistryTrieTest {
 		assertEquals("bunnies",	op1Result.getWildcards().get("wild3"));
 		
 	}
+	
+	@Test
+	public void testGetRawPath() {
+		RestOperation op1 = new RestOperation(HttpMethod.GET, "/api/{fork}/op1/{id}");
+		RestOperation op2 = new RestOperation(HttpMethod.GET, "/api");
+		
+		sut.addFunction(op1, "op1");
+		sut.addFunction(op2, "op2");
+		
+		ResolvedFunction<String> op1Result = sut.getFunction(HttpMethod.GET, new StringBuilder("/api/basic/op1/123"));
+		assertEquals("op1",		op1Result.getFunction());
+		assertEquals("basic",	op1Result.getWildcards().get("fork"));
+		assertEquals("123",		op1Result.getWildcards().get("id"));
+		
+		assertEquals("op2", 	sut.getFunction(HttpMethod.GET, "/api/").getFunction());
+		assertEquals("op2", 	sut.getFunction(HttpMethod.GET, "api").getFunction());
+		assertEquals(null, 		sut.getFunction(HttpMethod.GET, "/api/basic/op1"));
+		assertEquals(null, 		sut.getFunction(HttpMethod.POST, "/api"));
+		assertEquals(null, 		sut.getFunction(HttpMethod.GET, "/ap"));
+		assertEquals(null, 		sut.getFunction(HttpMethod.GET, "/apis"));
+	}
+	
+	@Test
+	public void testGetWildcardBacktrackLiteralWithoutFunction() {
+		RestOperation op1 		= new RestOperation(HttpMethod.GET, "/api/basic/op1");
+		RestOperation op2 		= new RestOperation(HttpMethod.GET, "/api/{fork}");
+		RestOperation op2Get 	= new RestOperation(HttpMethod.GET, "/api/basic");
+		
+		sut.addFunction(op1, "op1");
+		sut.addFunction(op2, "op2");
+		
+		ResolvedFunction<String> op2Result = sut.getFunction(op2Get);
+		assertEquals("op2", 	op2Result.getFunction());
+		assertEquals("basic",	op2Result.getWildcards().get("fork"));
+	}
+	
+	@Test
+	public void testGetWildcardsByIndex() {
+		RestOperation op1 		= new RestOperation(HttpMethod.GET, "/api/{fork}/op1/{id}");
+		RestOperation op2 		= new RestOperation(HttpMethod.GET, "/api/basic/op1/{other}");
+		
+		sut.addFunction(op1, "op1");
+		sut.addFunction(op2, "op2");
+		
+		ResolvedFunction<String> op1Result = sut.getFunction(HttpMethod.GET, "/api/advanced/op1/123");
+		assertEquals("op1",			op1Result.getFunction());
+		assertEquals(2,				op1Result.getWildcardCount());
+		assertEquals("fork",		op1Result.getWildcardName(0));
+		assertEquals("advanced",	op1Result.getWildcardValue(0));
+		assertEquals("id",			op1Result.getWildcardName(1));
+		assertEquals("123",			op1Result.getWildcardValue(1));
+		
+		ResolvedFunction<String> op2Result = sut.getFunction(HttpMethod.GET, "/api/basic/op1/123");
+		assertEquals("op2",			op2Result.getFunction());
+		assertEquals(1,				op2Result.getWildcardCount());
+		assertEquals("other",		op2Result.getWildcardName(0));
+		assertEquals("123",			op2Result.getWildcardValue(0));
+	}
 
-}
+	
+	@Test
+	public void testTypedWildcards() {
+		sut.addFunction(RestOperation.fromString("GET:/api/user/{id:long}"), "byId");
+		sut.addFunction(RestOperation.fromString("GET:/api/user/{uuid:uuid}"), "byUuid");
+		sut.addFunction(RestOperation.fromString("GET:/api/user/{slug}"), "bySlug");
+		sut.addFunction(RestOperation.fromString("GET:/api/country/{code:[A-Z]{3}}/info"), "country");
+		
+		ResolvedFunction<String> byId = sut.getFunction(HttpMethod.GET, "/api/user/-42");
+		assertEquals("byId",		byId.getFunction());
+		assertEquals("-42",			byId.getWildcardValue(0));
+		assertEquals(-42L,			byId.getTypedWildcardValue(0));
+		
+		ResolvedFunction<String> byUuid = sut.getFunction(HttpMethod.GET, "/api/user/123e4567-e89b-12d3-a456-426614174000");
+		assertEquals("byUuid",		byUuid.getFunction());
+		assertEquals(UUID.fromString("123e4567-e89b-12d3-a456-426614174000"), byUuid.getTypedWildcardValue(0));
+		
+		assertEquals("bySlug",		sut.getFunction(HttpMethod.GET, "/api/user/joe").getFunction());
+		assertEquals("joe",			sut.getFunction(HttpMethod.GET, "/api/user/joe").getTypedWildcardValue(0));
+		assertEquals("bySlug",		sut.getFunction(HttpMethod.GET, "/api/user/99999999999999999999").getFunction()); // overflows long
+		assertEquals("bySlug",		sut.getFunction(HttpMethod.GET, "/api/user/-").getFunction());
+		
+		assertEquals("country",		sut.getFunction(HttpMethod.GET, "/api/country/USA/info").getFunction());
+		assertEquals(null,			sut.getFunction(HttpMethod.GET, "/api/country/usa/info"));
+		assertEquals(null,			sut.getFunction(HttpMethod.GET, "/api/country/USAA/info"));
+	}
+	
+	@Test
+	public void testTypedWildcardBacktracking() {
+		sut.addFunction(RestOperation.fromString("GET:/api/{id:int}/detail"), "detail");
+		sut.addFunction(RestOperation.fromString("GET:/api/{name}/summary"), "summary");
+		
+		assertEquals("detail",		sut.getFunction(HttpMethod.GET, "/api/2147483647/detail").getFunction());
+		assertEquals(null,			sut.getFunction(HttpMethod.GET, "/api/2147483648/detail"));
+		assertEquals("summary",		sut.getFunction(HttpMethod.GET, "/api/12/summary").getFunction());
+		assertEquals("12",			sut.getFunction(HttpMethod.GET, "/api/12/summary").getTypedWildcardValue(0));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testTypedWildcardNameConflict() {
+		sut.addFunction(RestOperation.fromString("GET:/api/{id:long}/op1"), "op1");
+		sut.addFunction(RestOperation.fromString("GET:/api/{other:long}/op2"), "op2");
+	}
+	
+	@Test
+	public void testFromString() {
+		RestOperation op = RestOperation.fromString("GET:/api/{code:[A-Z]{3}}");
+		assertEquals(HttpMethod.GET,			op.getMethod());
+		assertEquals("/api/{code:[A-Z]{3}}",	op.getPath());
+		assertEquals("{code:[A-Z]{3}}",		op.getPathSegments().get(1).toString());
+	}
+
+	@Test
+	public void testTailWildcard() {
+		sut.addFunction(RestOperation.fromString("GET:/content/v1/tree/{path*}"), "tree");
+		sut.addFunction(RestOperation.fromString("GET:/content/v1/tree/{id:long}/meta"), "meta");
+		sut.addFunction(RestOperation.fromString("GET:/content/v1/tree/special"), "special");
+		
+		ResolvedFunction<String> deep = sut.getFunction(HttpMethod.GET, "/content/v1/tree/we-retail/en/men/shirts/");
+		assertEquals("tree",						deep.getFunction());
+		assertEquals("path",						deep.getWildcardName(0));
+		assertEquals("we-retail/en/men/shirts",		deep.getWildcardValue(0));
+		
+		assertEquals("we-retail",	sut.getFunction(HttpMethod.GET, "/content/v1/tree/we-retail").getWildcardValue(0));
+		assertEquals("special",		sut.getFunction(HttpMethod.GET, "/content/v1/tree/special").getFunction());
+		assertEquals("meta",		sut.getFunction(HttpMethod.GET, "/content/v1/tree/12/meta").getFunction());
+		assertEquals("12/other",	sut.getFunction(HttpMethod.GET, "/content/v1/tree/12/other").getWildcardValue(0));
+		assertEquals(null,			sut.getFunction(HttpMethod.GET, "/content/v1/tree"));
+	}
+	
+	@Test
+	public void testLiteralSegmentsDoNotMatchWildcardKeys() {
+		sut.addFunction(RestOperation.fromString("GET:/content/{path*}"), "tree");
+		sut.addFunction(RestOperation.fromString("GET:/content/**"), "stars");
+		sut.addFunction(RestOperation.fromString("GET:/content/*/meta"), "star");
+		
+		assertEquals("stars",		sut.getFunction(HttpMethod.GET, "/content/**").getFunction());
+		assertEquals("tree",		sut.getFunction(HttpMethod.GET, "/content/a/b").getFunction());
+		assertEquals("star",		sut.getFunction(HttpMethod.GET, "/content/*/meta").getFunction());
+		assertEquals("tree",		sut.getFunction(HttpMethod.GET, "/content/a/meta").getFunction());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testTailWildcardNotLast() {
+		sut.addFunction(RestOperation.fromString("GET:/content/{path*}/meta"), "op1");
+	}
 
+}
@@ -1,7 +1,9 @@
 package com.herodigital.wcm.internal.rest.registry;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Implementation of RestFunctionRegistry which uses a List to store functions.
@@ -23,15 +25,17 @@ public class RestRunctionRegistryList<T> implements RestFunctionRegistry<T> {
 	}
 
 	private static class Holder<T> {
+		private HttpMethod method;
 		private List<PathSegment> segments;
 		private T function;
-		public Holder(List<PathSegment> segments, T function) {
+		public Holder(HttpMethod method, List<PathSegment> segments, T function) {
+			this.method = method;
 			this.segments = segments;
 			this.function = function;
 		}
 		@Override
 		public String toString() {
-			return "Holder [segments=" + segments + ", function=" + function
+			return "Holder [method=" + method + ", segments=" + segments + ", function=" + function
 					+ "]";
 		}
 	}
@@ -42,6 +46,8 @@ public class RestRunctionRegistryList<T> implements RestFunctionRegistry<T> {
 		
 		List<PathSegment> searchSegments = operation.getPathSegments();
 		for (Holder<T> h : operationRegistry) {
+			if (h.method != operation.getMethod()) continue;
+			
 			List<PathSegment> registeredSegments = h.segments;
 			
 			if (searchSegments.size() != registeredSegments.size()) continue;
@@ -80,10 +86,26 @@ public class RestRunctionRegistryList<T> implements RestFunctionRegistry<T> {
 		return (bestMatch == null) ? null : new ResolvedFunction<T>(bestMatch.function, null);
 	}
 
+	@Override
+	public ResolvedFunction<T> getFunction(HttpMethod method, CharSequence path) {
+		return getFunction(new RestOperation(method, path.toString()));
+	}
+
+	@Override
+	public Set<HttpMethod> getAllowedMethods(CharSequence path) {
+		Set<HttpMethod> allowed = EnumSet.noneOf(HttpMethod.class);
+		for (HttpMethod method : HttpMethod.values()) {
+			if (getFunction(method, path) != null) {
+				allowed.add(method);
+			}
+		}
+		return allowed;
+	}
+
 	@Override
 	public void addFunction(RestOperation operation, T function) {
 		List<PathSegment> pathSegments = operation.getPathSegments();
-		Holder<T> holder = new Holder<>(pathSegments, function);
+		Holder<T> holder = new Holder<>(operation.getMethod(), pathSegments, function);
 		operationRegistry.add(holder);
 	}
 
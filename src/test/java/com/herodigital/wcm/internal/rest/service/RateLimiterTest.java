@@ -0,0 +1,63 @@
+package com.herodigital.wcm.internal.rest.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+	
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+	
+	@Test
+	public void testBurstThenSustainedRate() {
+		RateLimiter sut = new RateLimiter(10, 3, "");
+		long now = System.nanoTime();
+		
+		assertEquals(0, sut.tryAcquire(null, now));
+		assertEquals(0, sut.tryAcquire(null, now));
+		assertEquals(0, sut.tryAcquire(null, now));
+		long retry = sut.tryAcquire(null, now);
+		assertEquals(SECOND / 10, retry);
+		
+		assertEquals(0, sut.tryAcquire(null, now + retry));
+		assertTrue(sut.tryAcquire(null, now + retry) > 0);
+		
+		// fully recovered after an idle second
+		assertEquals(0, sut.tryAcquire(null, now + 2 * SECOND));
+		assertEquals(0, sut.tryAcquire(null, now + 2 * SECOND));
+		assertEquals(0, sut.tryAcquire(null, now + 2 * SECOND));
+	}
+	
+	@Test
+	public void testKeysAreLimitedSeparately() {
+		RateLimiter sut = new RateLimiter(1, 1, RateLimiter.BY_CLIENT_IP);
+		long now = System.nanoTime();
+		
+		assertEquals(0, sut.tryAcquire("10.0.0.1", now));
+		assertTrue(sut.tryAcquire("10.0.0.1", now) > 0);
+		assertEquals(0, sut.tryAcquire("10.0.0.2", now));
+	}
+	
+	@Test
+	public void testFullStoreEvictsIdleKeysAndSharesOverflow() {
+		RateLimiter sut = new RateLimiter(1, 1, RateLimiter.BY_CLIENT_IP, 2);
+		long now = System.nanoTime();
+		
+		assertEquals(0, sut.tryAcquire("a", now));
+		assertEquals(0, sut.tryAcquire("b", now));
+		assertEquals(2, sut.getSize());
+		
+		// store full of active keys, new keys share one bucket
+		assertEquals(0, sut.tryAcquire("c", now));
+		assertTrue(sut.tryAcquire("d", now) > 0);
+		assertEquals(2, sut.getSize());
+		
+		// idle keys are dropped to make room
+		assertEquals(0, sut.tryAcquire("e", now + 10 * SECOND));
+		assertEquals(1, sut.getSize());
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.herodigital.wcm.internal.rest.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+public class SlingRestServiceExceptionTest {
+	
+	private static final Gson GSON = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+	
+	@Test
+	public void testJsonSameAsGson() {
+		SlingRestServiceException e = new SlingRestServiceException.Builder(SlingRestServiceException.CATEGORY_VALIDATION, 
+				"Name \"<b>Joe's</b>\" & co = \\ \t\n\u0001  ünïcode")
+				.setErrorCode("E=1")
+				.setRedirect("/login?next=/a&b")
+				.create();
+		
+		assertEquals(GSON.toJson(e), e.toJson());
+		assertSame(e.toJson(), e.toJson());
+		assertEquals(GSON.toJson(new SlingRestServiceException.Builder(null, null).create()), 
+				new SlingRestServiceException.Builder(null, null).create().toJson());
+	}
+	
+	@Test
+	public void testStackTrace() {
+		SlingRestServiceException validation = new SlingRestServiceException.Builder(SlingRestServiceException.CATEGORY_VALIDATION, "bad").create();
+		assertEquals(0, validation.getStackTrace().length);
+		
+		SlingRestServiceException chained = new SlingRestServiceException.Builder(SlingRestServiceException.CATEGORY_VALIDATION, "bad")
+				.setException(new IOException())
+				.create();
+		assertTrue(chained.getStackTrace().length > 0);
+		
+		SlingRestServiceException error = new SlingRestServiceException.Builder(SlingRestServiceException.CATEGORY_ERROR, "failed").create();
+		assertTrue(error.getStackTrace().length > 0);
+		
+		SlingRestServiceException lightweight = new SlingRestServiceException.Builder(SlingRestServiceException.CATEGORY_ERROR, "failed")
+				.setStackTrace(false)
+				.create();
+		assertEquals(0, lightweight.getStackTrace().length);
+		assertEquals(500, lightweight.getHttpStatusCode());
+	}
+
+}
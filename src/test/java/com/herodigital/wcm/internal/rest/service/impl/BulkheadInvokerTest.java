@@ -0,0 +1,196 @@
+package com.herodigital.wcm.internal.rest.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.herodigital.wcm.internal.rest.service.RestFunctionInvoker;
+import com.herodigital.wcm.internal.rest.service.SlingRestService;
+import com.herodigital.wcm.internal.rest.service.SlingRestServiceException;
+
+public class BulkheadInvokerTest {
+	
+	private ExecutorService executor;
+	private CountDownLatch entered;
+	private CountDownLatch proceed;
+	
+	private RestFunctionInvoker blocking;
+	
+	@Before
+	public void before() {
+		executor = Executors.newCachedThreadPool();
+		entered = new CountDownLatch(1);
+		proceed = new CountDownLatch(1);
+		blocking = new RestFunctionInvoker() {
+			@Override
+			public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) throws Exception {
+				entered.countDown();
+				proceed.await();
+				return "done";
+			}
+		};
+	}
+	
+	@After
+	public void after() {
+		proceed.countDown();
+		executor.shutdownNow();
+	}
+	
+	@Test
+	public void testBulkheadFull() throws Exception {
+		final BulkheadInvoker sut = new BulkheadInvoker(blocking, new Bulkhead("test", 1, 0, 0), 0);
+		
+		Future<Object> first = executor.submit(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return sut.invoke(null, null);
+			}
+		});
+		entered.await(5, TimeUnit.SECONDS);
+		
+		assertStatus(503, sut);
+		
+		proceed.countDown();
+		assertEquals("done", first.get(5, TimeUnit.SECONDS));
+		assertEquals("done", sut.invoke(null, null)); // slot released
+	}
+	
+	@Test
+	public void testBulkheadQueuedWait() throws Exception {
+		final BulkheadInvoker sut = new BulkheadInvoker(blocking, new Bulkhead("test", 1, 1, 50), 0);
+		
+		executor.submit(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return sut.invoke(null, null);
+			}
+		});
+		entered.await(5, TimeUnit.SECONDS);
+		
+		long start = System.nanoTime();
+		assertStatus(503, sut);
+		assertEquals(true, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 40);
+	}
+	
+	@Test
+	public void testDeadlineOnRequestThread() throws Exception {
+		final Thread requestThread = Thread.currentThread();
+		final SlingHttpServletRequest request = request();
+		BulkheadInvoker sut = new BulkheadInvoker(new RestFunctionInvoker() {
+			@Override
+			public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) throws Exception {
+				assertSame(requestThread, Thread.currentThread());
+				return request.getAttribute(SlingRestService.DEADLINE_ATTRIBUTE);
+			}
+		}, new Bulkhead("test", 1, 0, 0), 1000);
+		long arrival = System.currentTimeMillis() - 200;
+		request.setAttribute(SlingRestService.ARRIVAL_ATTRIBUTE, arrival);
+		
+		assertEquals(arrival + 1000, sut.invoke(request, null));
+	}
+	
+	@Test
+	public void testDeadlinePassedBeforeInvocation() throws Exception {
+		SlingHttpServletRequest request = request();
+		request.setAttribute(SlingRestService.ARRIVAL_ATTRIBUTE, System.currentTimeMillis() - 2000);
+		BulkheadInvoker sut = new BulkheadInvoker(new RestFunctionInvoker() {
+			@Override
+			public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) throws Exception {
+				fail("Invoked after the deadline");
+				return null;
+			}
+		}, null, 1000);
+		
+		assertStatus(504, sut, request);
+	}
+	
+	@Test
+	public void testDeadlineBoundsWait() throws Exception {
+		final BulkheadInvoker sut = new BulkheadInvoker(blocking, new Bulkhead("test", 1, 1, 5000), 100);
+		
+		executor.submit(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return sut.invoke(request(), null);
+			}
+		});
+		entered.await(5, TimeUnit.SECONDS);
+		
+		SlingHttpServletRequest request = request();
+		request.setAttribute(SlingRestService.ARRIVAL_ATTRIBUTE, System.currentTimeMillis());
+		long start = System.nanoTime();
+		assertStatus(504, sut, request);
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+	}
+	
+	@Test
+	public void testFailureReleasesSlot() throws Exception {
+		BulkheadInvoker sut = new BulkheadInvoker(new RestFunctionInvoker() {
+			@Override
+			public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) throws Exception {
+				throw new IllegalStateException("failed");
+			}
+		}, new Bulkhead("test", 1, 0, 0), 0);
+		
+		for (int i = 0; i < 3; i++) {
+			try {
+				sut.invoke(null, null);
+				fail("Expected failure");
+			} catch (IllegalStateException e) {
+				assertEquals("failed", e.getMessage());
+			}
+		}
+	}
+	
+	private static SlingHttpServletRequest request() {
+		final Map<String, Object> attributes = new HashMap<>();
+		return (SlingHttpServletRequest) Proxy.newProxyInstance(BulkheadInvokerTest.class.getClassLoader(), 
+				new Class<?>[]{SlingHttpServletRequest.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if ("setAttribute".equals(method.getName())) {
+					attributes.put((String) args[0], args[1]);
+				} else if ("getAttribute".equals(method.getName())) {
+					return attributes.get(args[0]);
+				}
+				return null;
+			}
+		});
+	}
+	
+	private static void assertStatus(int httpStatus, BulkheadInvoker sut) throws Exception {
+		assertStatus(httpStatus, sut, null);
+	}
+	
+	private static void assertStatus(int httpStatus, BulkheadInvoker sut, SlingHttpServletRequest request) throws Exception {
+		try {
+			sut.invoke(request, null);
+			fail("Expected " + httpStatus);
+		} catch (SlingRestServiceException e) {
+			assertEquals(httpStatus, e.getHttpStatusCode());
+			assertEquals(SlingRestServiceException.CATEGORY_UNAVAILABLE, e.getErrorCategory());
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.herodigital.wcm.internal.rest.registry.HttpMethod;
+import com.herodigital.wcm.internal.rest.service.SlingRestServiceException;
+
+public class BatchOperationTest {
+	
+	@Test
+	public void testParse() throws Exception {
+		List<BatchOperation> operations = parse("["
+				+ "{\"method\":\"GET\",\"path\":\"/api/user/123.ws.json?fields=name&x=%20y\"},"
+				+ "{\"method\":\"post\",\"path\":\"/api/user/123/roles\",\"body\":{\"role\":\"admin\"}},"
+				+ "{\"method\":\"PUT\",\"path\":\"/api/user/123/note\",\"body\":\"plain text\"}"
+				+ "]", 10);
+		
+		assertEquals(3, operations.size());
+		assertEquals(HttpMethod.GET, operations.get(0).getOperation().getMethod());
+		assertEquals("/api/user/123.ws.json", operations.get(0).getOperation().getPath());
+		assertEquals("fields=name&x=%20y", operations.get(0).getQueryString());
+		assertNull(operations.get(0).getBody());
+		
+		assertEquals(HttpMethod.POST, operations.get(1).getOperation().getMethod());
+		assertNull(operations.get(1).getQueryString());
+		assertEquals("{\"role\":\"admin\"}", operations.get(1).getBody());
+		
+		assertEquals("plain text", operations.get(2).getBody());
+	}
+	
+	@Test
+	public void testPathDecoded() throws Exception {
+		BatchOperation operation = parse("[{\"method\":\"GET\",\"path\":\"/api/a%20b+c%3F.ws.json?x=%20y+z\"}]", 10).get(0);
+		
+		assertEquals("/api/a b+c?.ws.json", operation.getOperation().getPath());
+		assertEquals("x=%20y+z", operation.getQueryString());
+	}
+	
+	@Test
+	public void testInvalid() throws Exception {
+		assertInvalid("{\"method\":\"GET\",\"path\":\"/api\"}", 10);
+		assertInvalid("[{\"method\":\"GET\"}]", 10);
+		assertInvalid("[{\"method\":\"PATCH\",\"path\":\"/api\"}]", 10);
+		assertInvalid("[{\"method\":\"GET\",\"path\":\"api\"}]", 10);
+		assertInvalid("[{\"method\":\"GET\",\"path\":\"/api/%zz\"}]", 10);
+		assertInvalid("[1]", 10);
+		assertInvalid("[{", 10);
+		assertInvalid("[{\"method\":\"GET\",\"path\":\"/a\"},{\"method\":\"GET\",\"path\":\"/b\"}]", 1);
+	}
+	
+	private static void assertInvalid(String json, int maxOperations) {
+		try {
+			parse(json, maxOperations);
+			fail("Expected validation error for " + json);
+		} catch (SlingRestServiceException e) {
+			assertEquals(SlingRestServiceException.CATEGORY_VALIDATION, e.getErrorCategory());
+		}
+	}
+	
+	private static List<BatchOperation> parse(String json, int maxOperations) throws SlingRestServiceException {
+		return BatchOperation.parse(new StringReader(json), maxOperations);
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class EntityTagsTest {
+	
+	@Test
+	public void testFormat() {
+		assertEquals("\"v1\"", 		EntityTags.format("v1"));
+		assertEquals("\"v1\"", 		EntityTags.format("\"v1\""));
+		assertEquals("W/\"v1\"", 	EntityTags.format("W/\"v1\""));
+	}
+	
+	@Test
+	public void testCompute() throws Exception {
+		String eTag = EntityTags.compute("{\"a\":1}".getBytes("utf-8"));
+		assertEquals(34, eTag.length());
+		assertTrue(eTag.startsWith("\"") && eTag.endsWith("\""));
+		assertEquals(eTag, EntityTags.compute("{\"a\":1}".getBytes("utf-8")));
+		assertNotEquals(eTag, EntityTags.compute("{\"a\":2}".getBytes("utf-8")));
+	}
+	
+	@Test
+	public void testMatches() {
+		assertTrue(EntityTags.matches("\"v1\"", "\"v1\""));
+		assertTrue(EntityTags.matches("W/\"v1\"", "\"v1\""));
+		assertTrue(EntityTags.matches("\"v1\"", "W/\"v1\""));
+		assertTrue(EntityTags.matches("\"v0\", \"v1\"", "\"v1\""));
+		assertTrue(EntityTags.matches("\"v0\",W/\"v1\"", "\"v1\""));
+		assertTrue(EntityTags.matches("*", "\"v1\""));
+		
+		assertFalse(EntityTags.matches("\"v1\"", "\"v12\""));
+		assertFalse(EntityTags.matches("\"v12\"", "\"v1\""));
+		assertFalse(EntityTags.matches("\"v0\", \"v2\"", "\"v1\""));
+		assertFalse(EntityTags.matches(null, "\"v1\""));
+		assertFalse(EntityTags.matches("\"v1\"", null));
+		assertFalse(EntityTags.matches("v1", "\"v1\""));
+		assertFalse(EntityTags.matches("\"v1", "\"v1\""));
+		assertFalse(EntityTags.matches("W/", "\"v1\""));
+	}
+
+}
@@ -0,0 +1,127 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.herodigital.wcm.internal.rest.registry.HttpMethod;
+import com.herodigital.wcm.internal.rest.registry.RestOperation;
+import com.herodigital.wcm.internal.rest.service.RestFunctionRegistryService.FunctionMeta;
+import com.herodigital.wcm.internal.rest.service.RestResponse;
+import com.herodigital.wcm.internal.rest.servlet.ResponseCompression.Encoding;
+
+public class ResponseCacheTest {
+	
+	private static final long TTL = 60000;
+	
+	public ResponseCache sut;
+	
+	private FunctionMeta function1;
+	private FunctionMeta function2;
+	
+	@Before
+	public void before() {
+		this.sut = new ResponseCache(10 * 1024);
+		this.function1 = new FunctionMeta(null, "op1", new RestOperation(HttpMethod.GET, "/api/{id}"), null);
+		this.function2 = new FunctionMeta(null, "op2", new RestOperation(HttpMethod.GET, "/api/{id}/other"), null);
+	}
+	
+	@Test
+	public void testGetPut() throws Exception {
+		RenderedResponse response = RenderedResponse.render(new RestResponse.Builder("{\"a\":1}").create(), false);
+		
+		assertNull(sut.get(key(function1, "123")));
+		sut.put(key(function1, "123"), response, TTL);
+		
+		assertSame(response, sut.get(key(function1, "123")));
+		assertNull(sut.get(key(function1, "456")));
+		assertNull(sut.get(key(function2, "123")));
+		
+		assertEquals(1, sut.getHits());
+		assertEquals(3, sut.getMisses());
+		assertEquals(1, sut.getSize());
+		assertEquals(response.getWeight(), sut.getWeight());
+	}
+	
+	@Test
+	public void testReplace() throws Exception {
+		RenderedResponse response1 = RenderedResponse.render(new RestResponse.Builder("{\"a\":1}").create(), false);
+		RenderedResponse response2 = RenderedResponse.render(new RestResponse.Builder("{\"a\":12}").create(), false);
+		
+		sut.put(key(function1, "123"), response1, TTL);
+		sut.put(key(function1, "123"), response2, TTL);
+		
+		assertSame(response2, sut.get(key(function1, "123")));
+		assertEquals(response2.getWeight(), sut.getWeight());
+	}
+	
+	@Test
+	public void testExpired() throws Exception {
+		RenderedResponse response = RenderedResponse.render(new RestResponse.Builder("{\"a\":1}").create(), false);
+		
+		sut.put(key(function1, "123"), response, 0);
+		
+		assertNull(sut.get(key(function1, "123")));
+		assertEquals(0, sut.getSize());
+		assertEquals(0, sut.getWeight());
+	}
+	
+	@Test
+	public void testExpiredDroppedOnPut() throws Exception {
+		RenderedResponse response = RenderedResponse.render(new RestResponse.Builder("{\"a\":1}").create(), false);
+		
+		for (int i = 0; i < 20; i++) {
+			sut.put(key(function1, String.valueOf(i)), response, 0);
+		}
+		
+		assertEquals(0, sut.getSize());
+		assertEquals(0, sut.getWeight());
+		assertEquals(20, sut.getEvictions());
+	}
+	
+	@Test
+	public void testEvict() throws Exception {
+		RenderedResponse response = RenderedResponse.render(new RestResponse.Builder(new String(new char[900])).create(), false);
+		
+		for (int i = 0; i < 100; i++) {
+			sut.put(key(function1, String.valueOf(i)), response, TTL);
+		}
+		
+		assertTrue(sut.getWeight() <= sut.getMaxWeight());
+		assertEquals(100 - sut.getSize(), sut.getEvictions());
+		assertTrue(sut.getSize() > 0);
+	}
+	
+	@Test
+	public void testTooLarge() throws Exception {
+		RenderedResponse response = RenderedResponse.render(new RestResponse.Builder(new String(new char[20 * 1024])).create(), false);
+		
+		sut.put(key(function1, "123"), response, TTL);
+		
+		assertNull(sut.get(key(function1, "123")));
+	}
+	
+	@Test
+	public void testWeightIncludesCompressedForms() throws Exception {
+		ResponseCompression compression = new ResponseCompression(true, 0);
+		RenderedResponse response = RenderedResponse.render(new RestResponse.Builder(new String(new char[900])).create(), false);
+		response.compressAll(compression);
+		
+		sut.put(key(function1, "123"), response, TTL);
+		long weight = sut.getWeight();
+		response.getBody(Encoding.GZIP);
+		response.getBody(Encoding.DEFLATE);
+		
+		assertEquals(weight, response.getWeight());
+		assertTrue(weight > response.getBody().length + response.getBody(Encoding.GZIP).length);
+	}
+	
+	private static ResponseCache.Key key(FunctionMeta function, String id) {
+		return new ResponseCache.Key(function, new String[]{id, null, null});
+	}
+
+}
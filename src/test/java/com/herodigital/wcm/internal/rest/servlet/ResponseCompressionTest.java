@@ -0,0 +1,80 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.herodigital.wcm.internal.rest.servlet.ResponseCompression.Encoding;
+
+public class ResponseCompressionTest {
+	
+	public ResponseCompression sut;
+	
+	@Before
+	public void before() {
+		this.sut = new ResponseCompression(true, 1024);
+	}
+	
+	@Test
+	public void testNegotiate() {
+		assertEquals(Encoding.GZIP, 	sut.negotiate("gzip"));
+		assertEquals(Encoding.GZIP, 	sut.negotiate("gzip, deflate, br"));
+		assertEquals(Encoding.GZIP, 	sut.negotiate("deflate, gzip;q=0.5"));
+		assertEquals(Encoding.GZIP, 	sut.negotiate("*"));
+		assertEquals(Encoding.DEFLATE, 	sut.negotiate("deflate"));
+		assertEquals(Encoding.DEFLATE, 	sut.negotiate("gzip;q=0, deflate"));
+		assertEquals(Encoding.DEFLATE, 	sut.negotiate("*, gzip; q=0, deflate"));
+		assertNull(sut.negotiate("identity"));
+		assertNull(sut.negotiate("gzip;q=0"));
+		assertNull(sut.negotiate(""));
+		assertNull(sut.negotiate(null));
+	}
+	
+	@Test
+	public void testDisabled() {
+		sut = new ResponseCompression(false, 1024);
+		assertNull(sut.negotiate("gzip"));
+		assertFalse(sut.isCompressible(4096));
+	}
+	
+	@Test
+	public void testCompressible() {
+		assertFalse(sut.isCompressible(1023));
+		assertTrue(sut.isCompressible(1024));
+	}
+	
+	@Test
+	public void testCompress() throws Exception {
+		byte[] body = new String(new char[4096]).replace('\0', 'a').getBytes("utf-8");
+		
+		byte[] gzip = Encoding.GZIP.compress(body);
+		assertTrue(gzip.length < body.length);
+		assertArrayEquals(body, read(new GZIPInputStream(new ByteArrayInputStream(gzip))));
+		
+		byte[] deflate = Encoding.DEFLATE.compress(body);
+		assertTrue(deflate.length < body.length);
+		assertArrayEquals(body, read(new InflaterInputStream(new ByteArrayInputStream(deflate))));
+	}
+	
+	private static byte[] read(InputStream in) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RestPathNormalizerTest {
+	
+	public RestPathNormalizer sut;
+	
+	@Before
+	public void before() {
+		this.sut = new RestPathNormalizer(new String[]{"ws", "api"}, new String[]{"json"});
+	}
+	
+	@Test
+	public void testStripSelectorAndExtension() {
+		assertEquals("/api/user/123", sut.normalize("/api/user/123.ws.json").toString());
+		assertEquals("/api/user/123", sut.normalize("/api/user/123.api.json").toString());
+		assertEquals(13, sut.normalize("/api/user/123.ws.json").length());
+	}
+	
+	@Test
+	public void testUnchanged() {
+		String path = "/api/user/123";
+		assertSame(path, sut.normalize(path));
+		
+		// dot is not a wildcard
+		String other = "/api/user/123.wsxjson";
+		assertSame(other, sut.normalize(other));
+		String html = "/api/user/123.ws.html";
+		assertSame(html, sut.normalize(html));
+	}
+	
+	@Test
+	public void testCollapseSlashes() {
+		assertEquals("/api/user/123", sut.normalize("//api//user///123.ws.json").toString());
+		assertEquals("/api/user/", sut.normalize("/api/user//").toString());
+	}
+	
+	@Test
+	public void testNoDecode() {
+		// the container already decoded the resource path, a second decode would turn %2541 into A
+		assertEquals("/api/%2541dmin", sut.normalize("/api/%2541dmin.ws.json").toString());
+		String encoded = "/api/user/john%20doe";
+		assertSame(encoded, sut.normalize(encoded));
+		assertEquals("/api/user/a%2Fb", sut.normalize("/api//user/a%2Fb").toString());
+	}
+
+}
@@ -0,0 +1,87 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.herodigital.wcm.internal.rest.registry.HttpMethod;
+import com.herodigital.wcm.internal.rest.registry.RestOperation;
+import com.herodigital.wcm.internal.rest.service.RestFunctionRegistryService.FunctionMeta;
+import com.herodigital.wcm.internal.rest.service.RestResponse;
+
+public class SingleFlightTest {
+	
+	private SingleFlight sut;
+	private ExecutorService executor;
+	private FunctionMeta function;
+	
+	@Before
+	public void before() {
+		sut = new SingleFlight();
+		executor = Executors.newCachedThreadPool();
+		function = new FunctionMeta(null, "op", new RestOperation(HttpMethod.GET, "/api/{id}"), null);
+	}
+	
+	@After
+	public void after() {
+		executor.shutdownNow();
+	}
+	
+	@Test
+	public void testWaiterGetsLeaderResponse() throws Exception {
+		ResponseCache.Key key = key("1");
+		SingleFlight.Flight leader = new SingleFlight.Flight();
+		assertNull(sut.begin(key, leader));
+		
+		final SingleFlight.Flight inFlight = sut.begin(key("1"), new SingleFlight.Flight());
+		assertSame(leader, inFlight);
+		assertNull(sut.begin(key("2"), new SingleFlight.Flight())); // other key is independent
+		
+		Future<RenderedResponse> waiter = executor.submit(new Callable<RenderedResponse>() {
+			@Override
+			public RenderedResponse call() throws Exception {
+				return inFlight.await(5000);
+			}
+		});
+		RenderedResponse response = RenderedResponse.render(new RestResponse.Builder("{\"a\":1}").create(), true);
+		leader.complete(response);
+		sut.end(key, leader);
+		
+		assertSame(response, waiter.get(5, TimeUnit.SECONDS));
+		assertNull(sut.begin(key, new SingleFlight.Flight())); // ended, next request leads again
+	}
+	
+	@Test
+	public void testLeaderFailureReleasesWaiters() throws Exception {
+		ResponseCache.Key key = key("1");
+		SingleFlight.Flight leader = new SingleFlight.Flight();
+		sut.begin(key, leader);
+		sut.end(key, leader);
+		
+		assertNull(leader.await(5000));
+		assertEquals(0, sut.size());
+	}
+	
+	@Test
+	public void testWaitIsBounded() throws Exception {
+		SingleFlight.Flight leader = new SingleFlight.Flight();
+		sut.begin(key("1"), leader);
+		
+		assertNull(leader.await(10));
+	}
+	
+	private ResponseCache.Key key(String id) {
+		return new ResponseCache.Key(function, new String[]{id, null});
+	}
+
+}
@@ -0,0 +1,353 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import com.herodigital.wcm.internal.rest.registry.HttpMethod;
+import com.herodigital.wcm.internal.rest.registry.RestFunctionRegistryTrie;
+import com.herodigital.wcm.internal.rest.registry.RestOperation;
+import com.herodigital.wcm.internal.rest.service.RestFunctionInvoker;
+import com.herodigital.wcm.internal.rest.service.RestFunctionRegistryService.FunctionMeta;
+import com.herodigital.wcm.internal.rest.service.RestResponse;
+import com.herodigital.wcm.internal.rest.service.SlingRestFunction;
+
+public class SlingRestServiceServletTest {
+
+	private RestFunctionRegistryTrie<FunctionMeta> registry;
+
+	@Before
+	public void before() {
+		registry = new RestFunctionRegistryTrie<>();
+	}
+
+	private void addFunction(String operation, RestFunctionInvoker invoker) {
+		RestOperation op = RestOperation.fromString(operation);
+		registry.addFunction(op, new FunctionMeta(null, "test", op, invoker));
+	}
+
+	@Test
+	public void testStreamFailureDiscardsPartialBody() throws Exception {
+		addFunction("GET:/api/stream", new RestFunctionInvoker() {
+			@Override
+			public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+				return new RestResponse.Builder(new RestResponse.BodyWriter() {
+					@Override
+					public void writeTo(Writer writer) throws IOException {
+						writer.write("[");
+						for (int i = 0; i < 5000; i++) {
+							writer.write("\"item\",");
+						}
+						throw new IllegalStateException("backend went away");
+					}
+				}).setETag("v1").create();
+			}
+		});
+		SlingRestServiceServlet servlet = TestRequests.servlet(registry.freeze(), null);
+
+		TestRequests.Response response = new TestRequests.Response();
+		servlet.doGet(TestRequests.request("GET", "/api/stream.ws.json", Collections.singletonMap("Accept-Encoding", "gzip"), null, null),
+				response.proxy());
+
+		assertEquals(500, response.status);
+		assertEquals("", response.getBody());
+		assertFalse(response.headers.containsKey(ResponseCompression.HEADER_CONTENT_ENCODING));
+		assertFalse(response.headers.containsKey(EntityTags.HEADER_ETAG));
+		assertFalse(response.headers.containsKey(ResponseCompression.HEADER_VARY));
+	}
+
+	@Test
+	public void testCacheIsPerUser() throws Exception {
+		final AtomicInteger invocations = new AtomicInteger();
+		RestOperation op = RestOperation.fromString("GET:/api/me");
+		registry.addFunction(op, new FunctionMeta(null, "test", op, new RestFunctionInvoker() {
+			@Override
+			public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+				invocations.incrementAndGet();
+				return "\"" + request.getResourceResolver().getUserID() + "\"";
+			}
+		}, String.class, Cached.class.getMethod("me").getAnnotation(SlingRestFunction.class)));
+		SlingRestServiceServlet servlet = TestRequests.servlet(registry.freeze(), null);
+
+		assertEquals("\"alice\"", get(servlet, "/api/me.ws.json", "alice"));
+		assertEquals("\"bob\"", get(servlet, "/api/me.ws.json", "bob"));
+		assertEquals("\"alice\"", get(servlet, "/api/me.ws.json", "alice"));
+		assertEquals(2, invocations.get());
+	}
+
+	@Test
+	public void testCacheClearedOnRepublish() throws Exception {
+		final AtomicInteger invocations = new AtomicInteger();
+		RestOperation op = RestOperation.fromString("GET:/api/me");
+		registry.addFunction(op, new FunctionMeta(null, "test", op, new RestFunctionInvoker() {
+			@Override
+			public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+				return "\"" + invocations.incrementAndGet() + "\"";
+			}
+		}, String.class, Cached.class.getMethod("me").getAnnotation(SlingRestFunction.class)));
+		AtomicLong generation = new AtomicLong();
+		SlingRestServiceServlet servlet = TestRequests.servlet(registry.freeze(), generation, null);
+
+		assertEquals("\"1\"", get(servlet, "/api/me.ws.json", "alice"));
+		assertEquals("\"1\"", get(servlet, "/api/me.ws.json", "alice"));
+		generation.incrementAndGet();
+		assertEquals("\"2\"", get(servlet, "/api/me.ws.json", "alice"));
+		assertEquals(1, servlet.getResponseCache().getSize());
+	}
+
+	@Test
+	public void testCoalescingSharesOnlySuccess() throws Exception {
+		final AtomicInteger invocations = new AtomicInteger();
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch proceed = new CountDownLatch(1);
+		RestOperation op = RestOperation.fromString("GET:/api/shared");
+		registry.addFunction(op, new FunctionMeta(null, "test", op, new RestFunctionInvoker() {
+			@Override
+			public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) throws Exception {
+				if (invocations.incrementAndGet() > 1) {
+					return "\"ok\"";
+				}
+				entered.countDown();
+				proceed.await();
+				return new RestResponse.Builder("\"busy\"").setHttpStatus(503).create();
+			}
+		}, String.class, Cached.class.getMethod("shared").getAnnotation(SlingRestFunction.class)));
+		final SlingRestServiceServlet servlet = TestRequests.servlet(registry.freeze(), null);
+
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			Future<TestRequests.Response> leader = executor.submit(getTask(servlet, "/api/shared.ws.json"));
+			entered.await(5, TimeUnit.SECONDS);
+			Future<TestRequests.Response> waiter = executor.submit(getTask(servlet, "/api/shared.ws.json"));
+			Thread.sleep(100); // waiter joins the flight
+			proceed.countDown();
+
+			assertEquals(503, leader.get(5, TimeUnit.SECONDS).status);
+			assertEquals(200, waiter.get(5, TimeUnit.SECONDS).status);
+			assertEquals("\"ok\"", waiter.get().getBody());
+			assertEquals(2, invocations.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static Callable<TestRequests.Response> getTask(final SlingRestServiceServlet servlet, final String path) {
+		return new Callable<TestRequests.Response>() {
+			@Override
+			public TestRequests.Response call() throws Exception {
+				TestRequests.Response response = new TestRequests.Response();
+				servlet.doGet(TestRequests.request("GET", path, Collections.<String, String>emptyMap(), null, "alice"), response.proxy());
+				return response;
+			}
+		};
+	}
+
+	public static class Cached {
+		@SlingRestFunction(value = "GET:/api/me", cacheTtl = 60)
+		public void me() {
+		}
+
+		@SlingRestFunction(value = "GET:/api/shared", coalesceWait = 2000)
+		public void shared() {
+		}
+	}
+
+	private static String get(SlingRestServiceServlet servlet, String path, String userId) throws Exception {
+		TestRequests.Response response = new TestRequests.Response();
+		servlet.doGet(TestRequests.request("GET", path, Collections.<String, String>emptyMap(), null, userId), response.proxy());
+		assertEquals(200, response.status);
+		return response.getBody();
+	}
+
+	private SlingRestServiceServlet batchServlet() throws Exception {
+		Dictionary<String, Object> properties = new Hashtable<>();
+		properties.put(SlingRestServiceServlet.PROPERTY_BATCH_PATH, "/system/sling-rest/batch");
+		return TestRequests.servlet(registry.freeze(), properties);
+	}
+
+	private static JsonArray batch(SlingRestServiceServlet servlet, String body) throws Exception {
+		return batch(servlet, Collections.<String, String>emptyMap(), body);
+	}
+
+	private static JsonArray batch(SlingRestServiceServlet servlet, Map<String, String> headers, String body) throws Exception {
+		TestRequests.Response response = new TestRequests.Response();
+		servlet.doPost(TestRequests.request("POST", "/system/sling-rest/batch.ws.json", headers, body, null), response.proxy());
+		assertEquals(200, response.status);
+		return new JsonParser().parse(response.getBody()).getAsJsonObject().getAsJsonArray("responses");
+	}
+
+	private static JsonObject item(JsonArray responses, int index) {
+		return responses.get(index).getAsJsonObject();
+	}
+
+	@Test
+	public void testBatchDisabledByDefault() throws Exception {
+		SlingRestServiceServlet servlet = TestRequests.servlet(registry.freeze(), null);
+
+		TestRequests.Response response = new TestRequests.Response();
+		servlet.doPost(TestRequests.request("POST", "/system/sling-rest/batch.ws.json", Collections.<String, String>emptyMap(),
+				"[{\"method\":\"GET\",\"path\":\"/api/ok\"}]", null), response.proxy());
+		assertEquals(404, response.status);
+	}
+
+	@Test
+	public void testBatchItemRequestUsesOperationPathAndQuery() throws Exception {
+		addFunction("GET:/api/item/{id}", new RestFunctionInvoker() {
+			@Override
+			public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+				JsonObject json = new JsonObject();
+				json.addProperty("id", (String) request.getAttribute(SlingRestServiceServlet.WILDCARD_ATTRIBUTE_PREFIX + "id"));
+				json.addProperty("resourcePath", request.getRequestPathInfo().getResourcePath());
+				json.addProperty("extension", request.getRequestPathInfo().getExtension());
+				json.addProperty("q", request.getRequestParameter("q").getString());
+				json.addProperty("qCount", request.getRequestParameterMap().getValues("q").length);
+				json.addProperty("ifNoneMatch", request.getHeader("If-None-Match"));
+				json.addProperty("acceptEncoding", request.getHeaders("Accept-Encoding").hasMoreElements());
+				json.addProperty("headerNames", Collections.list(request.getHeaderNames()).toString());
+				return json.toString();
+			}
+		});
+		SlingRestServiceServlet servlet = batchServlet();
+		Map<String, String> headers = new TreeMap<>();
+		headers.put("If-None-Match", "\"abc\"");
+		headers.put("Accept-Encoding", "gzip");
+		headers.put("X-Test", "1");
+
+		JsonObject body = item(batch(servlet, headers, "[{\"method\":\"GET\",\"path\":\"/api/item/a%20b.ws.json?q=x%26y&q=2\"}]"), 0)
+				.getAsJsonObject("body");
+
+		assertEquals("a b", body.get("id").getAsString());
+		assertEquals("/api/item/a b", body.get("resourcePath").getAsString());
+		assertEquals("json", body.get("extension").getAsString());
+		assertEquals("x&y", body.get("q").getAsString());
+		assertEquals(2, body.get("qCount").getAsInt());
+		assertTrue(body.get("ifNoneMatch").isJsonNull());
+		assertFalse(body.get("acceptEncoding").getAsBoolean());
+		assertEquals("[X-Test]", body.get("headerNames").getAsString());
+	}
+
+	@Test
+	public void testBatchMalformedJsonBodyIsString() throws Exception {
+		addFunction("GET:/api/broken", new RestFunctionInvoker() {
+			@Override
+			public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+				return "{\"a\":1} trailing";
+			}
+		});
+		SlingRestServiceServlet servlet = batchServlet();
+
+		JsonArray responses = batch(servlet, "[{\"method\":\"GET\",\"path\":\"/api/broken\"}]");
+
+		assertEquals("{\"a\":1} trailing", item(responses, 0).get("body").getAsString());
+	}
+
+	@Test
+	public void testBatchKeepsRequestOrder() throws Exception {
+		addFunction("GET:/api/echo/{value}", new RestFunctionInvoker() {
+			@Override
+			public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+				return "\"" + request.getAttribute(SlingRestServiceServlet.WILDCARD_ATTRIBUTE_PREFIX + "value") + "\"";
+			}
+		});
+		SlingRestServiceServlet servlet = batchServlet();
+
+		StringBuilder body = new StringBuilder("[");
+		for (int i = 0; i < 20; i++) {
+			body.append(i > 0 ? "," : "").append("{\"method\":\"GET\",\"path\":\"/api/echo/").append(i).append("\"}");
+		}
+		JsonArray responses = batch(servlet, body.append("]").toString());
+
+		assertEquals(20, responses.size());
+		for (int i = 0; i < 20; i++) {
+			assertEquals(200, item(responses, i).get("status").getAsInt());
+			assertEquals(Integer.toString(i), item(responses, i).get("body").getAsString());
+		}
+	}
+
+	@Test
+	public void testBatchRunsOnRequestThreadAndSeesEarlierWrites() throws Exception {
+		final AtomicReference<String> stored = new AtomicReference<>("old");
+		final Thread requestThread = Thread.currentThread();
+		addFunction("GET:/api/value", new RestFunctionInvoker() {
+			@Override
+			public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+				assertSame(requestThread, Thread.currentThread());
+				return "\"" + stored.get() + "\"";
+			}
+		});
+		addFunction("POST:/api/value", new RestFunctionInvoker() {
+			@Override
+			public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+				assertSame(requestThread, Thread.currentThread());
+				stored.set("new");
+				return "\"stored\"";
+			}
+		});
+		SlingRestServiceServlet servlet = batchServlet();
+
+		JsonArray responses = batch(servlet, "[{\"method\":\"GET\",\"path\":\"/api/value\"},"
+				+ "{\"method\":\"POST\",\"path\":\"/api/value\"},"
+				+ "{\"method\":\"GET\",\"path\":\"/api/value\"}]");
+
+		assertEquals("old", item(responses, 0).get("body").getAsString());
+		assertEquals("stored", item(responses, 1).get("body").getAsString());
+		assertEquals("new", item(responses, 2).get("body").getAsString());
+	}
+
+	@Test
+	public void testBatchErrorsStayOnTheirItem() throws Exception {
+		addFunction("GET:/api/ok", new RestFunctionInvoker() {
+			@Override
+			public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+				return "\"ok\"";
+			}
+		});
+		addFunction("GET:/api/fail", new RestFunctionInvoker() {
+			@Override
+			public Object invoke(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+				throw new IllegalStateException("backend went away");
+			}
+		});
+		SlingRestServiceServlet servlet = batchServlet();
+
+		JsonArray responses = batch(servlet, "[{\"method\":\"GET\",\"path\":\"/api/ok\"},"
+				+ "{\"method\":\"GET\",\"path\":\"/api/fail\"},"
+				+ "{\"method\":\"GET\",\"path\":\"/api/missing\"},"
+				+ "{\"method\":\"GET\",\"path\":\"/api/ok\"}]");
+
+		assertEquals(4, responses.size());
+		assertEquals(200, item(responses, 0).get("status").getAsInt());
+		assertEquals(500, item(responses, 1).get("status").getAsInt());
+		assertEquals(404, item(responses, 2).get("status").getAsInt());
+		assertEquals(200, item(responses, 3).get("status").getAsInt());
+		assertEquals("ok", item(responses, 3).get("body").getAsString());
+	}
+
+}
@@ -0,0 +1,195 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletOutputStream;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.osgi.service.component.ComponentContext;
+
+import com.herodigital.wcm.internal.rest.registry.HttpMethod;
+import com.herodigital.wcm.internal.rest.registry.RestFunctionRegistry;
+import com.herodigital.wcm.internal.rest.registry.RestFunctionRegistry.ResolvedFunction;
+import com.herodigital.wcm.internal.rest.registry.RestOperation;
+import com.herodigital.wcm.internal.rest.service.RestFunctionRegistryService;
+import com.herodigital.wcm.internal.rest.service.RestFunctionRegistryService.FunctionMeta;
+
+/**
+ * Dynamic proxy stand-ins for Sling requests and responses used to run {@link SlingRestServiceServlet} in tests.
+ * Responses behave like a container that never commits on its own: the body is buffered until {@code sendError}.
+ */
+final class TestRequests {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private TestRequests() {
+	}
+
+	/**
+	 * @return activated servlet routing to {@code registry}
+	 */
+	static SlingRestServiceServlet servlet(RestFunctionRegistry<FunctionMeta> registry, Dictionary<String, Object> properties) throws Exception {
+		return servlet(registry, new AtomicLong(), properties);
+	}
+	
+	/**
+	 * @return activated servlet routing to {@code registry}, which reports {@code generation} as its registry generation
+	 */
+	static SlingRestServiceServlet servlet(final RestFunctionRegistry<FunctionMeta> registry, final AtomicLong generation, 
+			Dictionary<String, Object> properties) throws Exception {
+		SlingRestServiceServlet servlet = new SlingRestServiceServlet();
+		set(servlet, "registryService", new RestFunctionRegistryService() {
+			@Override
+			public ResolvedFunction<FunctionMeta> getFunction(RestOperation restOperation) {
+				return registry.getFunction(restOperation);
+			}
+			@Override
+			public ResolvedFunction<FunctionMeta> getFunction(HttpMethod method, CharSequence path) {
+				return registry.getFunction(method, path);
+			}
+			@Override
+			public Set<HttpMethod> getAllowedMethods(CharSequence path) {
+				return registry.getAllowedMethods(path);
+			}
+			@Override
+			public long getGeneration() {
+				return generation.get();
+			}
+		});
+		final Dictionary<String, Object> config = (properties == null) ? new Hashtable<String, Object>() : properties;
+		servlet.activate(proxy(ComponentContext.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method m, Object[] args) {
+				return "getProperties".equals(m.getName()) ? config : defaultValue(m);
+			}
+		}));
+		return servlet;
+	}
+
+	private static void set(Object target, String name, Object value) throws Exception {
+		Field field = SlingRestServiceServlet.class.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+
+	static SlingHttpServletRequest request(final String method, final String resourcePath, final Map<String, String> headers,
+			final String body, final String userId) {
+		final RequestPathInfo pathInfo = proxy(RequestPathInfo.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method m, Object[] args) {
+				return "getResourcePath".equals(m.getName()) ? resourcePath : defaultValue(m);
+			}
+		});
+		final ResourceResolver resolver = proxy(ResourceResolver.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method m, Object[] args) {
+				return "getUserID".equals(m.getName()) ? userId : defaultValue(m);
+			}
+		});
+		final Map<String, Object> attributes = new HashMap<String, Object>();
+		return proxy(SlingHttpServletRequest.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method m, Object[] args) {
+				switch (m.getName()) {
+				case "getRequestPathInfo": 	return pathInfo;
+				case "getResourceResolver": return resolver;
+				case "getPathInfo": 		return resourcePath;
+				case "getMethod": 			return method;
+				case "getHeader": 			return headers.get(args[0]);
+				case "getHeaders": 			return Collections.enumeration(headers.containsKey(args[0]) 
+													? Collections.singletonList(headers.get(args[0])) : Collections.emptyList());
+				case "getHeaderNames": 		return Collections.enumeration(headers.keySet());
+				case "getAttribute": 		return attributes.get(args[0]);
+				case "setAttribute": 		attributes.put((String) args[0], args[1]); return null;
+				case "getReader": 			return new BufferedReader(new StringReader((body == null) ? "" : body));
+				default: 					return defaultValue(m);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Response state, see {@link #proxy()}.
+	 */
+	static final class Response {
+		int status = 200;
+		String contentType;
+		boolean committed;
+		final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		private PrintWriter writer;
+
+		String getBody() {
+			if (writer != null) {
+				writer.flush();
+			}
+			return new String(body.toByteArray(), UTF_8);
+		}
+
+		SlingHttpServletResponse proxy() {
+			final ServletOutputStream out = new ServletOutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					body.write(b);
+				}
+			};
+			return TestRequests.proxy(SlingHttpServletResponse.class, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method m, Object[] args) {
+					switch (m.getName()) {
+					case "getOutputStream": 	return out;
+					case "getWriter":
+						if (writer == null) {
+							writer = new PrintWriter(new OutputStreamWriter(body, UTF_8));
+						}
+						return writer;
+					case "setStatus": 			status = (Integer) args[0]; return null;
+					case "setContentType": 		contentType = (String) args[0]; return null;
+					case "setHeader": 			headers.put((String) args[0], (String) args[1]); return null;
+					case "addHeader": 			headers.put((String) args[0], (String) args[1]); return null;
+					case "containsHeader": 		return headers.containsKey(args[0]);
+					case "isCommitted": 		return committed;
+					case "resetBuffer": 		body.reset(); return null;
+					case "reset": 				body.reset(); headers.clear(); status = 200; contentType = null; return null;
+					case "sendError": 			body.reset(); status = (Integer) args[0]; committed = true; return null;
+					default: 					return defaultValue(m);
+					}
+				}
+			});
+		}
+	}
+
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(TestRequests.class.getClassLoader(), new Class<?>[]{type}, handler));
+	}
+
+	private static Object defaultValue(Method m) {
+		Class<?> type = m.getReturnType();
+		if (type == boolean.class) return Boolean.FALSE;
+		if (type == int.class) return 0;
+		if (type == long.class) return 0L;
+		return null;
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.herodigital.wcm.internal.rest.servlet;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import com.herodigital.wcm.internal.rest.service.SlingRestServiceException;
+
+public class ThrottledErrorLogTest {
+	
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+	
+	@Test
+	public void testFirstOccurrencesThenSummaries() {
+		ThrottledErrorLog sut = new ThrottledErrorLog(LoggerFactory.getLogger(getClass()), 2, 10);
+		long now = System.nanoTime();
+		IOException e = new IOException("down");
+		
+		assertEquals(ThrottledErrorLog.LOG,			sut.record("GET:/a", e, now));
+		assertEquals(ThrottledErrorLog.LOG,			sut.record("GET:/a", e, now));
+		assertEquals(ThrottledErrorLog.SUPPRESS,	sut.record("GET:/a", e, now + SECOND));
+		assertEquals(ThrottledErrorLog.SUPPRESS,	sut.record("GET:/a", e, now + 2 * SECOND));
+		
+		// other route and other exception type are separate groups
+		assertEquals(ThrottledErrorLog.LOG,			sut.record("GET:/b", e, now + 2 * SECOND));
+		assertEquals(ThrottledErrorLog.LOG,			sut.record("GET:/a", new IllegalStateException(), now + 2 * SECOND));
+		
+		// summary of everything suppressed once the interval has passed
+		assertEquals(3,								sut.record("GET:/a", e, now + 10 * SECOND));
+		assertEquals(ThrottledErrorLog.SUPPRESS,	sut.record("GET:/a", e, now + 11 * SECOND));
+		
+		// quiet for an interval, logged in full again
+		assertEquals(ThrottledErrorLog.LOG,			sut.record("GET:/a", e, now + 30 * SECOND));
+	}
+	
+	@Test
+	public void testGroupedByChainedException() {
+		ThrottledErrorLog sut = new ThrottledErrorLog(LoggerFactory.getLogger(getClass()), 1, 10);
+		long now = System.nanoTime();
+		
+		assertEquals(ThrottledErrorLog.LOG,			sut.record("GET:/a", wrap(new IOException()), now));
+		assertEquals(ThrottledErrorLog.SUPPRESS,	sut.record("GET:/a", wrap(new IOException()), now));
+		assertEquals(ThrottledErrorLog.LOG,			sut.record("GET:/a", wrap(new IllegalArgumentException()), now));
+	}
+	
+	@Test
+	public void testQuietGroupsAreDropped() {
+		ThrottledErrorLog sut = new ThrottledErrorLog(LoggerFactory.getLogger(getClass()), 1, 10);
+		long now = System.nanoTime();
+		for (int i = 0; i < 1000; i++) {
+			sut.record("GET:/a/" + i, new IOException(), now);
+		}
+		assertEquals(ThrottledErrorLog.LOG,			sut.record("GET:/b", new IOException(), now));
+		assertEquals(ThrottledErrorLog.SUPPRESS,	sut.record("GET:/c", new IOException(), now)); // shares the overflow group
+		assertEquals(1000,							sut.getGroupCount());
+		
+		assertEquals(ThrottledErrorLog.LOG,			sut.record("GET:/c", new IOException(), now + 20 * SECOND));
+		assertEquals(1,								sut.getGroupCount());
+	}
+	
+	@Test
+	public void testDisabled() {
+		ThrottledErrorLog sut = new ThrottledErrorLog(LoggerFactory.getLogger(getClass()), -1, 10);
+		long now = System.nanoTime();
+		for (int i = 0; i < 100; i++) {
+			assertEquals(ThrottledErrorLog.LOG, sut.record("GET:/a", new IOException(), now));
+		}
+	}
+	
+	private static SlingRestServiceException wrap(Exception e) {
+		return new SlingRestServiceException.Builder(SlingRestServiceException.CATEGORY_ERROR, "failed").setException(e).create();
+	}
+
+}